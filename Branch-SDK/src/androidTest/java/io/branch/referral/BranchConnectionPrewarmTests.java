@@ -0,0 +1,87 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchConnectionPrewarmTests extends BranchTest {
+    private final List<Runnable> prewarmTasks = Collections.synchronizedList(new ArrayList<Runnable>());
+    private final CountDownLatch releasePrewarm = new CountDownLatch(1);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        releasePrewarm.countDown();
+        Branch.setSdkExecutor(null);
+        super.tearDown();
+    }
+
+    @Test
+    public void testDisabledSubmitsNothing() {
+        Branch.setSdkExecutor(new HoldingExecutor());
+        branch = Branch.getAutoInstance(getTestContext(), TEST_KEY);
+
+        Assert.assertTrue(prewarmTasks.isEmpty());
+    }
+
+    @Test
+    public void testDoesNotBlockSdkCreation() throws InterruptedException {
+        Branch.setSdkExecutor(new HoldingExecutor());
+        Branch.enableConnectionPrewarm();
+
+        // The prewarm cannot finish until the SDK has been created
+        long start = System.currentTimeMillis();
+        branch = Branch.getAutoInstance(getTestContext(), TEST_KEY);
+
+        Assert.assertNotNull(branch);
+        Assert.assertTrue(System.currentTimeMillis() - start < TEST_REQUEST_TIMEOUT);
+        Assert.assertEquals(1, prewarmTasks.size());
+    }
+
+    @Test
+    public void testTrackingDisabledSubmitsNothing() {
+        Branch.setSdkExecutor(new HoldingExecutor());
+        Branch.enableConnectionPrewarm();
+        PrefHelper.getInstance(getTestContext()).setBool(PrefHelper.KEY_TRACKING_STATE, true);
+        branch = Branch.getAutoInstance(getTestContext(), TEST_KEY);
+
+        Assert.assertTrue(prewarmTasks.isEmpty());
+    }
+
+    /**
+     * Runs every task on its own thread. The prewarm, the only task {@link Branch} submits itself,
+     * is recorded and held until the test ends.
+     */
+    private class HoldingExecutor implements Executor {
+        @Override
+        public void execute(final Runnable command) {
+            final boolean isPrewarm = command.getClass().getEnclosingClass() == Branch.class;
+            if (isPrewarm) {
+                prewarmTasks.add(command);
+            }
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (isPrewarm) {
+                        try {
+                            releasePrewarm.await(TEST_INIT_SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    command.run();
+                }
+            }).start();
+        }
+    }
+}
@@ -14,9 +14,12 @@ import org.junit.runner.RunWith;
 
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.branch.indexing.BranchUniversalObject;
 import io.branch.referral.QRCode.BranchQRCode;
+import io.branch.referral.test.mock.MockRemoteInterface;
 import io.branch.referral.util.LinkProperties;
 
 @RunWith(AndroidJUnit4.class)
@@ -194,5 +197,54 @@ public class BranchQRCodeTests extends BranchTest {
 
     }
 
+    @Test
+    public void testQRCodeBytesReachDataHandlerThroughQueue() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final byte[] image = new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, (byte) 0xff};
+                branch.setBranchRemoteInterface(new BinaryQRCodeRemoteInterface(image));
+
+                final CountDownLatch received = new CountDownLatch(1);
+                final AtomicReference<byte[]> receivedImage = new AtomicReference<>();
+                // Its own canonical identifier, so the code is not served from the QR code cache
+                BranchUniversalObject buo = new BranchUniversalObject().setCanonicalIdentifier("test/binary/" + System.nanoTime());
+                try {
+                    new BranchQRCode().getQRCodeAsData(getTestContext(), buo, new LinkProperties(), new BranchQRCode.BranchQRCodeDataHandler() {
+                        @Override
+                        public void onSuccess(byte[] qrCodeData) {
+                            receivedImage.set(qrCodeData);
+                            received.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            received.countDown();
+                        }
+                    });
+                    Assert.assertTrue(received.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                } catch (IOException | InterruptedException e) {
+                    Assert.fail(e.getMessage());
+                }
+                Assert.assertArrayEquals(image, receivedImage.get());
+            }
+        });
+    }
+
+    // Returns the QR code as raw bytes, the way the default network layer does
+    private static class BinaryQRCodeRemoteInterface extends MockRemoteInterface {
+        private final byte[] image_;
+
+        BinaryQRCodeRemoteInterface(byte[] image) {
+            image_ = image;
+        }
 
-    }
\ No newline at end of file
+        @Override
+        public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+            if (url.contains(Defines.RequestPath.QRCode.getPath())) {
+                return BranchResponse.forBinaryData(image_, 200);
+            }
+            return super.doRestfulPost(url, payload);
+        }
+    }
+}
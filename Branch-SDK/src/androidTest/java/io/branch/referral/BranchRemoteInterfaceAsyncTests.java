@@ -0,0 +1,149 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.branch.referral.network.BranchRemoteInterface;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchRemoteInterfaceAsyncTests extends BranchTest {
+    private static final String URL = "https://api2.branch.io/v2/event/standard";
+    private static final String TAG = "v2/event/standard";
+    private static final long RESPONSE_DELAY_MILLIS = 500;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance();
+    }
+
+    @Test
+    public void testAsyncPostDoesNotBlockCaller() throws Exception {
+        final CountDownLatch responded = new CountDownLatch(1);
+        final AtomicReference<ServerResponse> result = new AtomicReference<>();
+        BranchRemoteInterface remoteInterface = new AsyncRemoteInterface(RESPONSE_DELAY_MILLIS, 1);
+
+        long start = System.currentTimeMillis();
+        remoteInterface.make_restful_post(new JSONObject(), URL, TAG, TEST_KEY, 0, new BranchRemoteInterface.ServerResponseCallback() {
+            @Override
+            public void onServerResponse(ServerResponse response) {
+                result.set(response);
+                responded.countDown();
+            }
+        });
+
+        Assert.assertTrue(System.currentTimeMillis() - start < RESPONSE_DELAY_MILLIS);
+        Assert.assertTrue(responded.await(TEST_REQUEST_TIMEOUT * 2, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(200, result.get().getStatusCode());
+        Assert.assertEquals("123", result.get().getObject().optString("id"));
+    }
+
+    @Test
+    public void testRepeatedCallbackIsIgnored() throws Exception {
+        final AtomicInteger responses = new AtomicInteger(0);
+        final CountDownLatch responded = new CountDownLatch(1);
+        BranchRemoteInterface remoteInterface = new AsyncRemoteInterface(0, 3);
+
+        remoteInterface.make_restful_get(URL, new JSONObject(), TAG, TEST_KEY, 0, new BranchRemoteInterface.ServerResponseCallback() {
+            @Override
+            public void onServerResponse(ServerResponse response) {
+                responses.incrementAndGet();
+                responded.countDown();
+            }
+        });
+
+        Assert.assertTrue(responded.await(TEST_REQUEST_TIMEOUT * 2, TimeUnit.MILLISECONDS));
+        Thread.sleep(RESPONSE_DELAY_MILLIS);
+        Assert.assertEquals(1, responses.get());
+    }
+
+    @Test
+    public void testDefaultAsyncAdapterUsesBlockingCall() {
+        final AtomicReference<ServerResponse> result = new AtomicReference<>();
+        BranchRemoteInterface remoteInterface = new BranchRemoteInterface() {
+            @Override
+            public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+                throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, "offline");
+            }
+
+            @Override
+            public BranchResponse doRestfulPost(String url, JSONObject payload) {
+                return new BranchResponse("{\"id\":\"123\"}", 200);
+            }
+        };
+
+        remoteInterface.make_restful_post(new JSONObject(), URL, TAG, TEST_KEY, 0, new BranchRemoteInterface.ServerResponseCallback() {
+            @Override
+            public void onServerResponse(ServerResponse response) {
+                result.set(response);
+            }
+        });
+        // The blocking adapter completes on the calling thread
+        Assert.assertEquals(200, result.get().getStatusCode());
+
+        remoteInterface.make_restful_get(URL, new JSONObject(), TAG, TEST_KEY, 0, new BranchRemoteInterface.ServerResponseCallback() {
+            @Override
+            public void onServerResponse(ServerResponse response) {
+                result.set(response);
+            }
+        });
+        Assert.assertEquals(BranchError.ERR_BRANCH_NO_CONNECTIVITY, result.get().getStatusCode());
+    }
+
+    // Completes requests from its own thread, the way an HTTP client with async I/O does
+    private static class AsyncRemoteInterface extends BranchRemoteInterface {
+        private final long delayMillis_;
+        private final int callbackCount_;
+
+        AsyncRemoteInterface(long delayMillis, int callbackCount) {
+            delayMillis_ = delayMillis;
+            callbackCount_ = callbackCount;
+        }
+
+        @Override
+        public BranchResponse doRestfulGet(String url) {
+            throw new UnsupportedOperationException("Only async calls are expected");
+        }
+
+        @Override
+        public BranchResponse doRestfulPost(String url, JSONObject payload) {
+            throw new UnsupportedOperationException("Only async calls are expected");
+        }
+
+        @Override
+        public void doRestfulGetAsync(String url, BranchResponseCallback callback) {
+            respondLater(callback);
+        }
+
+        @Override
+        public void doRestfulPostAsync(String url, JSONObject payload, BranchResponseCallback callback) {
+            respondLater(callback);
+        }
+
+        private void respondLater(final BranchResponseCallback callback) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(delayMillis_);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < callbackCount_; i++) {
+                        callback.onResponse(new BranchResponse("{\"id\":\"123\"}", 200));
+                    }
+                }
+            }).start();
+        }
+    }
+}
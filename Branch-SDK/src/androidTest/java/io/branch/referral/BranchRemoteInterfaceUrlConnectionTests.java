@@ -0,0 +1,176 @@
+package io.branch.referral;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.branch.referral.network.BranchRemoteInterface;
+import io.branch.referral.network.BranchRemoteInterfaceUrlConnection;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchRemoteInterfaceUrlConnectionTests extends BranchTest {
+    private static final int CLIENT_COUNT = 16;
+    private static final int REQUESTS_PER_CLIENT = 25;
+    private static final long STRESS_TIMEOUT_MILLIS = 60000;
+    private static final String TAG = "v1/stub";
+
+    private ServerSocket serverSocket;
+    private ExecutorService serverExecutor;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance();
+    }
+
+    @After
+    public void stopStubServer() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        if (serverExecutor != null) {
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsOnOneInstance() throws Exception {
+        final String url = "http://127.0.0.1:" + startStubServer() + "/" + TAG;
+        final BranchRemoteInterface remoteInterface = new BranchRemoteInterfaceUrlConnection(branch);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(CLIENT_COUNT);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        for (int client = 0; client < CLIENT_COUNT; client++) {
+            final int firstId = client * REQUESTS_PER_CLIENT;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int id = firstId; id < firstId + REQUESTS_PER_CLIENT; id++) {
+                            JSONObject params = new JSONObject().put("id", id);
+                            ServerResponse response = remoteInterface.make_restful_get(url, params, TAG, TEST_KEY, 0);
+                            String mismatch = checkResponse(id, response);
+                            if (mismatch != null) {
+                                failure.compareAndSet(null, mismatch);
+                            }
+                        }
+                    } catch (InterruptedException | JSONException e) {
+                        failure.compareAndSet(null, e.toString());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        Assert.assertTrue(done.await(STRESS_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertNull(failure.get(), failure.get());
+    }
+
+    // Every field must come from the request's own response, not from one running next to it
+    private static String checkResponse(int id, ServerResponse response) {
+        int expectedStatus = statusFor(id);
+        if (response.getStatusCode() != expectedStatus) {
+            return "Request " + id + " got status " + response.getStatusCode() + ", expected " + expectedStatus;
+        }
+        if (response.getObject().optInt("id", -1) != id) {
+            return "Request " + id + " got body " + response.getObject();
+        }
+        if (!requestIdFor(id).equals(response.getRequestId())) {
+            return "Request " + id + " got request id " + response.getRequestId();
+        }
+        return null;
+    }
+
+    private static int statusFor(int id) {
+        return id % 4 == 0 ? 500 : 200;
+    }
+
+    private static String requestIdFor(int id) {
+        return "req-" + id;
+    }
+
+    // Minimal HTTP/1.1 server answering each GET with the id it was sent, after a random delay so
+    // responses finish out of order
+    private int startStubServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        serverExecutor = Executors.newCachedThreadPool();
+        serverExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        serverExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                respond(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        return serverSocket.getLocalPort();
+    }
+
+    private static void respond(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String requestLine = reader.readLine();
+            String header;
+            do {
+                header = reader.readLine();
+            } while (header != null && !header.isEmpty());
+
+            int id = Integer.parseInt(Uri.parse("http://127.0.0.1" + requestLine.split(" ")[1]).getQueryParameter("id"));
+            Thread.sleep(new Random().nextInt(20));
+
+            int status = statusFor(id);
+            byte[] body = ("{\"id\":" + id + "}").getBytes("UTF-8");
+            String head = "HTTP/1.1 " + status + (status == 200 ? " OK" : " Internal Server Error") + "\r\n" +
+                    Defines.HeaderKey.RequestId.getKey() + ": " + requestIdFor(id) + "\r\n" +
+                    "Content-Type: application/json\r\n" +
+                    "Content-Length: " + body.length + "\r\n" +
+                    "Connection: close\r\n\r\n";
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(head.getBytes("UTF-8"));
+            outputStream.write(body);
+            outputStream.flush();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            BranchLogger.w("Stub server failed: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
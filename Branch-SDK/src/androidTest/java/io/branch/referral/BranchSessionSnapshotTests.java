@@ -0,0 +1,77 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchSessionSnapshotTests extends BranchTest {
+    private PrefHelper prefHelper;
+    private ServerRequestQueue queue;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance(TEST_KEY);
+        prefHelper = PrefHelper.getInstance(getTestContext());
+        queue = branch.requestQueue_;
+    }
+
+    @Test
+    public void testBindsIdentifiersAfterTokenRotation() throws JSONException {
+        setIdentifiers("session_1", "bundle_1", "device_1");
+        JSONObject queuedPost = createPost();
+
+        // An init response hands out new identifiers while the request is still queued
+        setIdentifiers("session_2", "bundle_2", "device_2");
+        queue.getSessionSnapshot().bind(queuedPost);
+
+        Assert.assertEquals("session_2", queuedPost.getString(Defines.Jsonkey.SessionID.getKey()));
+        Assert.assertEquals("bundle_2", queuedPost.getString(Defines.Jsonkey.RandomizedBundleToken.getKey()));
+        Assert.assertEquals("device_2", queuedPost.getString(Defines.Jsonkey.RandomizedDeviceToken.getKey()));
+    }
+
+    @Test
+    public void testBindLeavesMissingKeysOut() throws JSONException {
+        setIdentifiers("session_1", "bundle_1", "device_1");
+        JSONObject post = new JSONObject().put(Defines.Jsonkey.SessionID.getKey(), "stale");
+
+        queue.getSessionSnapshot().bind(post);
+
+        Assert.assertEquals("session_1", post.getString(Defines.Jsonkey.SessionID.getKey()));
+        Assert.assertFalse(post.has(Defines.Jsonkey.RandomizedBundleToken.getKey()));
+        Assert.assertFalse(post.has(Defines.Jsonkey.RandomizedDeviceToken.getKey()));
+    }
+
+    @Test
+    public void testBranchKeyChangeDropsIdentifiersOfPreviousKey() throws JSONException {
+        setIdentifiers("session_1", "bundle_1", "device_1");
+
+        Assert.assertTrue(prefHelper.setBranchKey("key_live_another_key"));
+        JSONObject post = createPost();
+        queue.getSessionSnapshot().bind(post);
+
+        Assert.assertEquals(PrefHelper.NO_STRING_VALUE, post.getString(Defines.Jsonkey.SessionID.getKey()));
+        Assert.assertEquals(PrefHelper.NO_STRING_VALUE, post.getString(Defines.Jsonkey.RandomizedBundleToken.getKey()));
+        Assert.assertEquals(PrefHelper.NO_STRING_VALUE, post.getString(Defines.Jsonkey.RandomizedDeviceToken.getKey()));
+    }
+
+    private void setIdentifiers(String sessionId, String randomizedBundleToken, String randomizedDeviceToken) {
+        prefHelper.setSessionID(sessionId);
+        prefHelper.setRandomizedBundleToken(randomizedBundleToken);
+        prefHelper.setRandomizedDeviceToken(randomizedDeviceToken);
+        queue.updateSessionSnapshot();
+    }
+
+    private JSONObject createPost() throws JSONException {
+        return new JSONObject()
+                .put(Defines.Jsonkey.SessionID.getKey(), prefHelper.getSessionID())
+                .put(Defines.Jsonkey.RandomizedBundleToken.getKey(), prefHelper.getRandomizedBundleToken())
+                .put(Defines.Jsonkey.RandomizedDeviceToken.getKey(), prefHelper.getRandomizedDeviceToken());
+    }
+}
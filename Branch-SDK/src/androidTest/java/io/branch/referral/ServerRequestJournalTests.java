@@ -0,0 +1,87 @@
+package io.branch.referral;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.branch.indexing.BranchUniversalObject;
+
+@RunWith(AndroidJUnit4.class)
+public class ServerRequestJournalTests extends BranchTest {
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        deleteJournal();
+        initBranchInstance();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        deleteJournal();
+        super.tearDown();
+    }
+
+    @Test
+    public void testPendingRequestsAreRestored() throws InterruptedException {
+        ServerRequestJournal journal = new ServerRequestJournal(getTestContext());
+        ServerRequest sent = createEvent("sent_event");
+        ServerRequest pending = createEvent("pending_event");
+
+        journal.recordAdded(sent);
+        journal.recordAdded(pending);
+        journal.recordRemoved(sent);
+
+        List<ServerRequest> restored = restore(new ServerRequestJournal(getTestContext()));
+        Assert.assertEquals(1, restored.size());
+        Assert.assertTrue(restored.get(0) instanceof ServerRequestLogEvent);
+        Assert.assertEquals(pending.uuid, restored.get(0).uuid);
+        Assert.assertEquals("pending_event", restored.get(0).getPost().optString(Defines.Jsonkey.Name.getKey()));
+    }
+
+    @Test
+    public void testClearedJournalRestoresNothing() throws InterruptedException {
+        ServerRequestJournal journal = new ServerRequestJournal(getTestContext());
+        journal.recordAdded(createEvent("cleared_event"));
+        journal.recordCleared();
+
+        Assert.assertTrue(restore(new ServerRequestJournal(getTestContext())).isEmpty());
+    }
+
+    private ServerRequest createEvent(String name) {
+        return new ServerRequestLogEvent(getTestContext(), Defines.RequestPath.TrackCustomEvent, name,
+                new HashMap<String, Object>(), new JSONObject(), new JSONObject(), new ArrayList<BranchUniversalObject>());
+    }
+
+    private List<ServerRequest> restore(ServerRequestJournal journal) throws InterruptedException {
+        final List<ServerRequest> restored = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        journal.restore(getTestContext(), new ServerRequestJournal.RestoreCallback() {
+            @Override
+            public void onRequestsRestored(@NonNull List<ServerRequest> requests) {
+                restored.addAll(requests);
+                latch.countDown();
+            }
+        });
+        // The callback is skipped when there is nothing to restore
+        latch.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        return restored;
+    }
+
+    private void deleteJournal() {
+        new File(getTestContext().getFilesDir(), "branch_request_journal").delete();
+    }
+}
@@ -0,0 +1,409 @@
+package io.branch.referral;
+
+import android.os.Looper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.branch.referral.network.FailingMockRemoteInterface;
+import io.branch.referral.test.mock.MockRemoteInterface;
+
+@RunWith(AndroidJUnit4.class)
+public class ServerRequestQueueTests extends BranchTest {
+    private static final int PRODUCER_COUNT = 8;
+    private static final int EVENTS_PER_PRODUCER = 500;
+    private static final String PRODUCER_KEY = "producer";
+    private static final String INDEX_KEY = "index";
+    private static final long STRESS_TIMEOUT_MILLIS = 30000;
+    private static final int TASK_TIMEOUT_MILLIS = 300;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance();
+    }
+
+    @Test
+    public void testConcurrentProducersAndDrainer() throws Exception {
+        final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+        queue.setCapacity(Integer.MAX_VALUE);
+
+        final List<List<ServerRequest>> requestsByProducer = new ArrayList<>();
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++) {
+            List<ServerRequest> requests = new ArrayList<>();
+            for (int index = 0; index < EVENTS_PER_PRODUCER; index++) {
+                requests.add(createEvent(producer, index));
+            }
+            requestsByProducer.add(requests);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(PRODUCER_COUNT + 1);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        for (int producer = 0; producer < PRODUCER_COUNT; producer++) {
+            final List<ServerRequest> requests = requestsByProducer.get(producer);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (ServerRequest request : requests) {
+                            queue.enqueue(request);
+                        }
+                    } catch (InterruptedException e) {
+                        failure.compareAndSet(null, "Producer interrupted");
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int[] nextIndex = new int[PRODUCER_COUNT];
+                int drained = 0;
+                try {
+                    start.await();
+                    while (drained < PRODUCER_COUNT * EVENTS_PER_PRODUCER) {
+                        ServerRequest request = queue.peek();
+                        if (request == null) {
+                            Thread.yield();
+                            continue;
+                        }
+                        if (!queue.remove(request)) {
+                            failure.compareAndSet(null, "Peeked request could not be removed");
+                            return;
+                        }
+                        int producer = request.getPost().getInt(PRODUCER_KEY);
+                        int index = request.getPost().getInt(INDEX_KEY);
+                        if (index != nextIndex[producer]) {
+                            failure.compareAndSet(null, "Producer " + producer + " expected " + nextIndex[producer] + " but drained " + index);
+                            return;
+                        }
+                        nextIndex[producer]++;
+                        drained++;
+                    }
+                } catch (InterruptedException e) {
+                    failure.compareAndSet(null, "Drainer interrupted");
+                } catch (JSONException e) {
+                    failure.compareAndSet(null, "Drained request without producer data");
+                } finally {
+                    done.countDown();
+                }
+            }
+        }).start();
+
+        start.countDown();
+        Assert.assertTrue(done.await(STRESS_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        Assert.assertNull(failure.get(), failure.get());
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertNull(queue.peek());
+    }
+
+    @Test
+    public void testInsertAtFrontMovesQueuedRequest() throws JSONException {
+        ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+        ServerRequest first = createEvent(0, 0);
+        ServerRequest second = createEvent(0, 1);
+        queue.enqueue(first);
+        queue.enqueue(second);
+
+        queue.insertRequestAtFront(second);
+
+        Assert.assertEquals(2, queue.getSize());
+        Assert.assertSame(second, queue.peekAt(0));
+        Assert.assertSame(first, queue.peekAt(1));
+        Assert.assertTrue(queue.remove(second));
+        Assert.assertTrue(queue.remove(first));
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertNull(queue.peek());
+    }
+
+    @Test
+    public void testRetriedRequestKeepsCallbacksAndLane() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final FailingMockRemoteInterface remoteInterface = new FailingMockRemoteInterface(getTestContext(), Defines.RequestPath.TrackCustomEvent.getPath(), 2);
+                branch.setBranchRemoteInterface(remoteInterface);
+                branch.setRetryInterval(10);
+                branch.setParallelRequestLanes(2);
+
+                final List<Integer> attemptLanes = Collections.synchronizedList(new ArrayList<Integer>());
+                final AtomicInteger successCount = new AtomicInteger(0);
+                final AtomicInteger failureCount = new AtomicInteger(0);
+                final CountDownLatch succeeded = new CountDownLatch(1);
+                JSONObject post = new JSONObject();
+                try {
+                    post.put(Defines.Jsonkey.Name.getKey(), "retried_event");
+                } catch (JSONException e) {
+                    Assert.fail(e.getMessage());
+                }
+                final ServerRequest event = new ServerRequestLogEvent(Defines.RequestPath.TrackCustomEvent, post, getTestContext()) {
+                    @Override
+                    JSONObject getPostWithInstrumentationValues(ConcurrentHashMap<String, String> instrumentationData, BranchSessionSnapshot sessionSnapshot) {
+                        // Built once per attempt, on the lane the attempt runs on
+                        attemptLanes.add(lane_);
+                        return super.getPostWithInstrumentationValues(instrumentationData, sessionSnapshot);
+                    }
+
+                    @Override
+                    public void onRequestSucceeded(ServerResponse response, Branch branch) {
+                        successCount.incrementAndGet();
+                        succeeded.countDown();
+                    }
+
+                    @Override
+                    public void handleFailure(int statusCode, String causeMsg) {
+                        failureCount.incrementAndGet();
+                    }
+                };
+                ServerRequestQueue.getInstance(getTestContext()).handleNewRequest(event);
+
+                try {
+                    Assert.assertTrue(succeeded.await(TEST_REQUEST_TIMEOUT * 4, TimeUnit.MILLISECONDS));
+                    // No late duplicate of the callback
+                    Thread.sleep(TEST_REQUEST_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Assert.fail("interrupted");
+                }
+                Assert.assertEquals(3, remoteInterface.getAttemptCount());
+                Assert.assertEquals(1, successCount.get());
+                Assert.assertEquals(0, failureCount.get());
+                Assert.assertEquals(3, attemptLanes.size());
+                Assert.assertNotEquals(ServerRequestQueue.ORDERED_LANE, (int) attemptLanes.get(0));
+                for (int lane : attemptLanes) {
+                    Assert.assertEquals(event.lane_, lane);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testTimeoutCompletesOnceOnMainThread() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final long responseDelay = TEST_REQUEST_TIMEOUT * 2;
+                // Answers the event long after the task deadline, so the late response races nothing
+                branch.setBranchRemoteInterface(new MockRemoteInterface() {
+                    @Override
+                    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+                        if (url.contains(Defines.RequestPath.TrackCustomEvent.getPath())) {
+                            try {
+                                Thread.sleep(responseDelay);
+                            } catch (InterruptedException ignored) {
+                            }
+                        }
+                        return super.doRestfulPost(url, payload);
+                    }
+                });
+                branch.setNetworkTimeout(TASK_TIMEOUT_MILLIS / 2);
+                branch.setNetworkConnectTimeout(TASK_TIMEOUT_MILLIS / 2);
+
+                final List<Integer> failureCodes = Collections.synchronizedList(new ArrayList<Integer>());
+                final AtomicInteger successCount = new AtomicInteger(0);
+                final AtomicReference<Boolean> isMainThread = new AtomicReference<>();
+                final CountDownLatch failed = new CountDownLatch(1);
+                JSONObject post = new JSONObject();
+                try {
+                    post.put(Defines.Jsonkey.Name.getKey(), "slow_event");
+                } catch (JSONException e) {
+                    Assert.fail(e.getMessage());
+                }
+                ServerRequest event = new ServerRequestLogEvent(Defines.RequestPath.TrackCustomEvent, post, getTestContext()) {
+                    @Override
+                    public void onRequestSucceeded(ServerResponse response, Branch branch) {
+                        successCount.incrementAndGet();
+                    }
+
+                    @Override
+                    public void handleFailure(int statusCode, String causeMsg) {
+                        isMainThread.compareAndSet(null, Looper.myLooper() == Looper.getMainLooper());
+                        failureCodes.add(statusCode);
+                        failed.countDown();
+                    }
+                };
+                long start = System.currentTimeMillis();
+                ServerRequestQueue.getInstance(getTestContext()).handleNewRequest(event);
+
+                try {
+                    Assert.assertTrue(failed.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                    Assert.assertTrue(System.currentTimeMillis() - start < responseDelay);
+                    // Lets the late response arrive, it must not complete the request again
+                    Thread.sleep(responseDelay + TEST_REQUEST_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Assert.fail("interrupted");
+                }
+                Assert.assertEquals(1, failureCodes.size());
+                Assert.assertEquals(BranchError.ERR_BRANCH_TASK_TIMEOUT, (int) failureCodes.get(0));
+                Assert.assertEquals(0, successCount.get());
+                Assert.assertTrue(isMainThread.get());
+            }
+        });
+    }
+
+    @Test
+    public void testOfflineHoldsOnlyAnalytics() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+                final TestConnectivityMonitor connectivityMonitor = new TestConnectivityMonitor();
+                queue.setConnectivityMonitor(connectivityMonitor);
+
+                ServerRequest event;
+                try {
+                    event = createEvent(0, 0);
+                } catch (JSONException e) {
+                    Assert.fail(e.getMessage());
+                    return;
+                }
+                queue.handleNewRequest(event);
+
+                // The link request queued behind the held event is still sent
+                final CountDownLatch linkCreated = new CountDownLatch(1);
+                new BranchShortLinkBuilder(getTestContext())
+                        .setChannel("offline")
+                        .generateShortUrl(new Branch.BranchLinkCreateListener() {
+                            @Override
+                            public void onLinkCreate(String url, BranchError error) {
+                                Assert.assertNull(error);
+                                Assert.assertNotNull(url);
+                                linkCreated.countDown();
+                            }
+                        });
+                try {
+                    Assert.assertTrue(linkCreated.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                    Assert.assertSame(event, queue.peek());
+
+                    connectivityMonitor.isConnected_ = true;
+                    queue.processNextQueueItem("testOfflineHoldsOnlyAnalytics");
+                    long deadline = System.currentTimeMillis() + TEST_REQUEST_TIMEOUT * 2;
+                    while (queue.getSize() > 0 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(50);
+                    }
+                } catch (InterruptedException e) {
+                    Assert.fail("interrupted");
+                }
+                Assert.assertEquals(0, queue.getSize());
+            }
+        });
+    }
+
+    @Test
+    public void testUnlockDispatchesOnlyItsWaiters() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final List<String> sentEvents = Collections.synchronizedList(new ArrayList<String>());
+                branch.setBranchRemoteInterface(new MockRemoteInterface() {
+                    @Override
+                    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+                        if (url.contains(Defines.RequestPath.TrackCustomEvent.getPath())) {
+                            sentEvents.add(payload.optString(Defines.Jsonkey.Name.getKey()));
+                        }
+                        return super.doRestfulPost(url, payload);
+                    }
+                });
+                final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+
+                ServerRequest userAgentWaiter;
+                ServerRequest gaidWaiter;
+                ServerRequest bothWaiter;
+                try {
+                    userAgentWaiter = createNamedEvent("user_agent_waiter");
+                    gaidWaiter = createNamedEvent("gaid_waiter");
+                    bothWaiter = createNamedEvent("both_waiter");
+                } catch (JSONException e) {
+                    Assert.fail(e.getMessage());
+                    return;
+                }
+                userAgentWaiter.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.USER_AGENT_STRING_LOCK);
+                gaidWaiter.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK);
+                bothWaiter.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.USER_AGENT_STRING_LOCK);
+                bothWaiter.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK);
+                queue.enqueue(userAgentWaiter);
+                queue.enqueue(gaidWaiter);
+                queue.enqueue(bothWaiter);
+
+                try {
+                    queue.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.USER_AGENT_STRING_LOCK);
+                    awaitSize(queue, 2);
+
+                    // Only the request waiting on nothing else went out, the others keep their other lock
+                    Assert.assertEquals(Collections.singletonList("user_agent_waiter"), new ArrayList<>(sentEvents));
+                    Assert.assertTrue(gaidWaiter.hasProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK));
+                    Assert.assertFalse(bothWaiter.hasProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.USER_AGENT_STRING_LOCK));
+                    Assert.assertTrue(bothWaiter.hasProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK));
+
+                    queue.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK);
+                    awaitSize(queue, 0);
+                } catch (InterruptedException e) {
+                    Assert.fail("interrupted");
+                }
+                Assert.assertEquals(0, queue.getSize());
+                Assert.assertEquals(3, sentEvents.size());
+                Assert.assertTrue(sentEvents.contains("gaid_waiter"));
+                Assert.assertTrue(sentEvents.contains("both_waiter"));
+            }
+        });
+    }
+
+    private void awaitSize(ServerRequestQueue queue, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TEST_REQUEST_TIMEOUT * 3;
+        while (queue.getSize() > size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(size, queue.getSize());
+    }
+
+    private ServerRequest createNamedEvent(String name) throws JSONException {
+        JSONObject post = new JSONObject();
+        post.put(Defines.Jsonkey.Name.getKey(), name);
+        return new ServerRequestLogEvent(Defines.RequestPath.TrackCustomEvent, post, getTestContext());
+    }
+
+    private ServerRequest createEvent(int producer, int index) throws JSONException {
+        JSONObject post = new JSONObject();
+        post.put(Defines.Jsonkey.Name.getKey(), "stress_event");
+        post.put(PRODUCER_KEY, producer);
+        post.put(INDEX_KEY, index);
+        return new ServerRequestLogEvent(Defines.RequestPath.TrackCustomEvent, post, getTestContext());
+    }
+
+    private static class TestConnectivityMonitor extends BranchConnectivityMonitor {
+        volatile boolean isConnected_ = false;
+
+        TestConnectivityMonitor() {
+            super(new Listener() {
+                @Override
+                public void onNetworkAvailable() {
+                }
+            });
+        }
+
+        @Override
+        boolean isConnected() {
+            return isConnected_;
+        }
+    }
+}
@@ -145,6 +145,61 @@ public class ServerRequestTests extends BranchTest {
         Assert.assertTrue(eventRequest.creation_ts > 0);
     }
 
+    @Test
+    public void testUserFacingRequestQueuedAheadOfEvents() {
+        new BranchEvent(BRANCH_STANDARD_EVENT.PURCHASE).logEvent(getTestContext());
+        new BranchEvent(BRANCH_STANDARD_EVENT.ADD_TO_CART).logEvent(getTestContext());
+        branch.getLastAttributedTouchData(new ServerRequestGetLATD.BranchLastAttributedTouchDataListener() {
+            @Override
+            public void onDataFetched(JSONObject jsonObject, BranchError error) {
+            }
+        });
+        final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+        Assert.assertEquals(3, queue.getSize());
+
+        // The LATD request jumps ahead, the events keep the order they were logged in
+        Assert.assertTrue(queue.peekAt(0) instanceof ServerRequestGetLATD);
+        Assert.assertEquals(BRANCH_STANDARD_EVENT.PURCHASE.getName(), queue.peekAt(1).getPost().optString(Defines.Jsonkey.Name.getKey()));
+        Assert.assertEquals(BRANCH_STANDARD_EVENT.ADD_TO_CART.getName(), queue.peekAt(2).getPost().optString(Defines.Jsonkey.Name.getKey()));
+    }
+
+    @Test
+    public void testFullQueueDropsOldestEvent() {
+        branch.setRequestQueueCapacity(2);
+        new BranchEvent("first_event").logEvent(getTestContext());
+        new BranchEvent("second_event").logEvent(getTestContext());
+        new BranchEvent("third_event").logEvent(getTestContext());
+
+        final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+        Assert.assertEquals(2, queue.getSize());
+        Assert.assertEquals("second_event", queue.peekAt(0).getPost().optString(Defines.Jsonkey.Name.getKey()));
+        Assert.assertEquals(Integer.valueOf(1), branch.getDroppedRequestCounts().get(Defines.RequestPath.TrackCustomEvent));
+    }
+
+    @Test
+    public void testFullQueueRejectsNewRequest() {
+        branch.setRequestQueueCapacity(1);
+        branch.setRequestQueueOverflowPolicy(Defines.QueueOverflowPolicy.REJECT);
+        new BranchEvent("first_event").logEvent(getTestContext());
+
+        final Exception[] failure = new Exception[1];
+        new BranchEvent("second_event").logEvent(getTestContext(), new BranchEvent.BranchLogEventCallback() {
+            @Override
+            public void onSuccess(int responseCode) {
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failure[0] = e;
+            }
+        });
+
+        Assert.assertEquals(1, ServerRequestQueue.getInstance(getTestContext()).getSize());
+        Assert.assertNotNull(failure[0]);
+        Assert.assertTrue(failure[0].getMessage().contains(String.valueOf(BranchError.ERR_BRANCH_QUEUE_FULL)));
+        Assert.assertEquals(Integer.valueOf(1), branch.getDroppedRequestCounts().get(Defines.RequestPath.TrackCustomEvent));
+    }
+
     private void setTimeouts(int timeout, int connectTimeout){
         branch.setNetworkTimeout(timeout);
         branch.setNetworkConnectTimeout(connectTimeout);
@@ -0,0 +1,44 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class UniversalResourceAnalyserRefreshTests {
+    private static final long DAY = UniversalResourceAnalyser.DEFAULT_MIN_REFRESH_INTERVAL;
+    private static final long LAST_CHECK = 1000000L;
+
+    @Test
+    public void testNeverCheckedIsDueNow() {
+        Assert.assertEquals(0, UniversalResourceAnalyser.getNextRefreshTime(0, 0, DAY));
+        Assert.assertEquals(0, UniversalResourceAnalyser.getNextRefreshTime(0, 5, DAY));
+    }
+
+    @Test
+    public void testIntervalDoublesWithEveryMiss() {
+        Assert.assertEquals(LAST_CHECK + DAY, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 0, DAY));
+        Assert.assertEquals(LAST_CHECK + 2 * DAY, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 1, DAY));
+        Assert.assertEquals(LAST_CHECK + 4 * DAY, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 2, DAY));
+    }
+
+    @Test
+    public void testIntervalIsCapped() {
+        Assert.assertEquals(LAST_CHECK + UniversalResourceAnalyser.MAX_REFRESH_INTERVAL, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 3, DAY));
+        Assert.assertEquals(LAST_CHECK + UniversalResourceAnalyser.MAX_REFRESH_INTERVAL, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, Integer.MAX_VALUE, DAY));
+    }
+
+    @Test
+    public void testZeroIntervalChecksEverySession() {
+        Assert.assertEquals(LAST_CHECK, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 4, 0));
+        Assert.assertEquals(LAST_CHECK, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void testIntervalLongerThanCapIsKept() {
+        long interval = 2 * UniversalResourceAnalyser.MAX_REFRESH_INTERVAL;
+        Assert.assertEquals(LAST_CHECK + interval, UniversalResourceAnalyser.getNextRefreshTime(LAST_CHECK, 3, interval));
+    }
+}
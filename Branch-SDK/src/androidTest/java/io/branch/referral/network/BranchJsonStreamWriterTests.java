@@ -0,0 +1,86 @@
+package io.branch.referral.network;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Compares the bytes written by {@link BranchJsonStreamWriter} with the platform
+ * {@link JSONObject#toString()}, which is what request bodies used to be built from.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BranchJsonStreamWriterTests {
+    private static final String UTF_8 = "UTF-8";
+
+    @Test
+    public void testSlashesMatchToString() throws Exception {
+        JSONObject body = new JSONObject()
+                .put("url", "https://branch.io/a/b?c=d")
+                .put("script", "</script>")
+                .put("a/b", "/");
+
+        assertSameBytes(body);
+    }
+
+    @Test
+    public void testControlCharactersMatchToString() throws Exception {
+        StringBuilder controls = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            controls.append(c);
+        }
+        JSONObject body = new JSONObject()
+                .put("controls", controls.toString())
+                .put("quote", "say \"hi\"")
+                .put("path", "C:\\branch")
+                .put("delete", "x\u007fy");
+
+        assertSameBytes(body);
+    }
+
+    @Test
+    public void testNonAsciiMatchesToString() throws Exception {
+        JSONObject body = new JSONObject()
+                .put("latin", "caf\u00e9 \u00a0\u0085")
+                .put("cjk", "\u65e5\u672c")
+                .put("separators", "x\u2028y\u2029z")
+                .put("emoji", "\ud83d\ude00")
+                .put("\u00fcber", "key");
+
+        assertSameBytes(body);
+    }
+
+    @Test
+    public void testNestedValuesMatchToString() throws Exception {
+        JSONObject body = new JSONObject()
+                .put("int", 42)
+                .put("long", 1700000000000L)
+                .put("double", 12.5)
+                .put("whole_double", 3.0)
+                .put("bool", false)
+                .put("null", JSONObject.NULL)
+                .put("array", new JSONArray().put(1).put("t/wo").put(new JSONObject().put("three", "\u00e9")))
+                .put("empty", new JSONObject())
+                .put("empty_array", new JSONArray());
+
+        assertSameBytes(body);
+    }
+
+    private static void assertSameBytes(JSONObject body) throws IOException, JSONException {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(streamed, UTF_8);
+        BranchJsonStreamWriter.write(body, writer);
+        writer.close();
+
+        Assert.assertArrayEquals(body.toString().getBytes(UTF_8), streamed.toByteArray());
+    }
+}
@@ -0,0 +1,50 @@
+package io.branch.referral.network;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.branch.referral.PrefHelper;
+import io.branch.referral.test.mock.MockRemoteInterface;
+
+/**
+ * Answers the first POSTs to the given path with a 503, then succeeds like
+ * {@link MockRemoteInterface}. Uses the retry policy of the default network layer, so the queue
+ * retries the failed attempts.
+ */
+public class FailingMockRemoteInterface extends MockRemoteInterface {
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private final BranchRetryPolicy retryPolicy_;
+    private final String failingPath_;
+    private final int failureCount_;
+    private final AtomicInteger attemptCount_ = new AtomicInteger(0);
+
+    public FailingMockRemoteInterface(Context context, String failingPath, int failureCount) {
+        retryPolicy_ = new BranchRetryPolicy(PrefHelper.getInstance(context));
+        failingPath_ = failingPath;
+        failureCount_ = failureCount;
+    }
+
+    @Override
+    BranchRetryPolicy getRetryPolicy() {
+        return retryPolicy_;
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+        if (url.contains(failingPath_) && attemptCount_.getAndIncrement() < failureCount_) {
+            return new BranchResponse(null, HTTP_SERVICE_UNAVAILABLE);
+        }
+        return super.doRestfulPost(url, payload);
+    }
+
+    /**
+     * @return The number of POSTs to the failing path so far, failed or not.
+     */
+    public int getAttemptCount() {
+        return attemptCount_.get();
+    }
+}
@@ -16,7 +16,6 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
@@ -37,12 +36,15 @@ import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -50,8 +52,12 @@ import io.branch.indexing.BranchUniversalObject;
 import io.branch.interfaces.IBranchLoggingCallbacks;
 import io.branch.referral.Defines.PreinstallKey;
 import io.branch.referral.ServerRequestGetLATD.BranchLastAttributedTouchDataListener;
+import io.branch.referral.network.BranchCircuitBreaker;
+import io.branch.referral.network.BranchConnectionStats;
+import io.branch.referral.network.BranchHttpCache;
 import io.branch.referral.network.BranchRemoteInterface;
 import io.branch.referral.network.BranchRemoteInterfaceUrlConnection;
+import io.branch.referral.network.BranchRttEstimator;
 import io.branch.referral.util.BRANCH_STANDARD_EVENT;
 import io.branch.referral.util.BranchEvent;
 import io.branch.referral.util.LinkProperties;
@@ -210,6 +216,12 @@ public class Branch {
     static boolean disableAutoSessionInitialization;
 
     static boolean referringLinkAttributionForPreinstalledAppsEnabled = false;
+
+    private static boolean enableRequestJournal_ = false;
+
+    private static boolean enableConnectionPrewarm_ = false;
+
+    private static boolean enableConnectivityMonitor_ = false;
     
     /**
      * <p>A {@link Branch} object that is instantiated on init and holds the singleton instance of
@@ -386,6 +398,7 @@ public class Branch {
             BranchUtil.setTestMode(BranchUtil.checkTestMode(context));
             branchReferral_ = initBranchSDK(context, BranchUtil.readBranchKey(context));
             getPreinstallSystemData(branchReferral_, context);
+            branchReferral_.prewarmConnectionIfEnabled();
         }
         return branchReferral_;
     }
@@ -421,6 +434,7 @@ public class Branch {
             }
             branchReferral_ = initBranchSDK(context, branchKey);
             getPreinstallSystemData(branchReferral_, context);
+            branchReferral_.prewarmConnectionIfEnabled();
         }
         return branchReferral_;
     }
@@ -609,6 +623,7 @@ public class Branch {
         isActivityLifeCycleCallbackRegistered_ = false;
 
         bypassWaitingForIntent_ = false;
+        enableConnectionPrewarm_ = false;
     }
 
 
@@ -637,7 +652,8 @@ public class Branch {
     
     /**
      * Sets the amount of time in milliseconds to wait before re-attempting a timed-out request
-     * to the Branch API. Default 1000 ms.
+     * to the Branch API. Default 1000 ms. The wait doubles with every further attempt, up to
+     * {@link #setMaxRetryInterval(int)}.
      *
      * @param retryInterval An {@link Integer} value specifying the number of milliseconds to
      *                      wait before re-attempting a timed-out request.
@@ -647,6 +663,21 @@ public class Branch {
             prefHelper_.setRetryInterval(retryInterval);
         }
     }
+
+    /**
+     * Sets the longest time in milliseconds to wait between two attempts of a request to the
+     * Branch API. The wait starts at the retry interval, doubles with every attempt up to this
+     * value, and is jittered. A Retry-After longer than this value fails the request instead.
+     * Default 30000 ms.
+     *
+     * @param maxRetryInterval An {@link Integer} value specifying the maximum number of
+     *                         milliseconds to wait before re-attempting a request.
+     */
+    public void setMaxRetryInterval(int maxRetryInterval) {
+        if (prefHelper_ != null && maxRetryInterval > 0) {
+            prefHelper_.setMaxRetryInterval(maxRetryInterval);
+        }
+    }
     
     /**
      * <p>Sets the duration in milliseconds that the system should wait for a response before timing
@@ -689,6 +720,62 @@ public class Branch {
         }
     }
 
+    /**
+     * Sets the number of lanes on which independent requests (v2 events, short links and last
+     * attributed touch data) are dispatched concurrently once the session is initialised. Init,
+     * open and install requests always run one at a time, in order, and ordering is preserved
+     * within each lane.
+     *
+     * Defaults to 0, meaning every request is sent one after the other.
+     * Maximum of 4
+     * @param laneCount An {@link Integer} specifying the number of parallel lanes.
+     */
+    public void setParallelRequestLanes(int laneCount) {
+        if (requestQueue_ != null && laneCount >= 0) {
+            requestQueue_.setParallelLaneCount(laneCount);
+        }
+    }
+
+    /**
+     * Sets the number of requests the request queue holds, for example while the device is
+     * offline. Once the queue is full the policy set with
+     * {@link #setRequestQueueOverflowPolicy(Defines.QueueOverflowPolicy)} applies.
+     *
+     * Must be greater than 0
+     * Defaults to 25
+     * @param capacity An {@link Integer} specifying the maximum number of queued requests.
+     */
+    public void setRequestQueueCapacity(int capacity) {
+        if (requestQueue_ != null && capacity > 0) {
+            requestQueue_.setCapacity(capacity);
+        }
+    }
+
+    /**
+     * Sets what happens to requests once the request queue is full.
+     *
+     * Defaults to {@link Defines.QueueOverflowPolicy#DROP_OLDEST_ANALYTICS}
+     * @param policy The {@link Defines.QueueOverflowPolicy} to apply.
+     */
+    public void setRequestQueueOverflowPolicy(@NonNull Defines.QueueOverflowPolicy policy) {
+        if (requestQueue_ != null) {
+            requestQueue_.setOverflowPolicy(policy);
+        }
+    }
+
+    /**
+     * Gets the number of requests dropped since the app started because the request queue was
+     * full, by request path. Rejected requests are included, spilled requests are not.
+     *
+     * @return A {@link Map} of {@link Defines.RequestPath} to the number of dropped requests.
+     */
+    public Map<Defines.RequestPath, Integer> getDroppedRequestCounts() {
+        if (requestQueue_ == null) {
+            return new EnumMap<>(Defines.RequestPath.class);
+        }
+        return requestQueue_.getDroppedRequestCounts();
+    }
+
     /**
      * Sets the window for the referrer GCLID field. The GCLID will be persisted locally from the
      * time it is set + window in milliseconds. Thereafter, it will be deleted.
@@ -715,6 +802,157 @@ public class Branch {
         disableDeviceIDFetch_ = deviceIdFetch;
     }
     
+    /**
+     * Keeps an append-only journal of queued requests on disk so that v2 events still waiting to
+     * be sent when the app process is killed are sent on the next launch.
+     * This method should be called from your {@link Application#onCreate()} method before creating Branch auto instance by calling {@link Branch#getAutoInstance(Context)}
+     */
+    public static void enableRequestJournal() {
+        enableRequestJournal_ = true;
+    }
+
+    static boolean isRequestJournalEnabled() {
+        return enableRequestJournal_;
+    }
+
+    /**
+     * Holds queued analytics events while the device has no validated network, instead of letting
+     * each of them time out and fail, and sends them once a network is back. Session init and
+     * requests with a callback are still sent and fail after their normal timeout. Requires the
+     * ACCESS_NETWORK_STATE permission, without it requests are sent regardless of connectivity.
+     * This method should be called from your {@link Application#onCreate()} method before creating Branch auto instance by calling {@link Branch#getAutoInstance(Context)}
+     */
+    public static void enableConnectivityMonitor() {
+        enableConnectivityMonitor_ = true;
+    }
+
+    static boolean isConnectivityMonitorEnabled() {
+        return enableConnectivityMonitor_;
+    }
+
+    /**
+     * Runs the background work of the SDK, including its network requests, on the given executor
+     * instead of the SDK thread pool. Passing null restores the SDK thread pool.
+     * This method should be called from your {@link Application#onCreate()} method before creating Branch auto instance by calling {@link Branch#getAutoInstance(Context)}
+     *
+     * @param executor The {@link Executor} to run SDK tasks on.
+     */
+    public static void setSdkExecutor(@Nullable Executor executor) {
+        BranchSdkExecutor.setExecutor(executor);
+    }
+
+    /**
+     * Sets the priority of the SDK background threads, as a {@link android.os.Process} thread
+     * priority such as {@link android.os.Process#THREAD_PRIORITY_BACKGROUND}. The priority is set
+     * when a thread starts, so call this before creating the Branch instance.
+     * Has no effect on an executor supplied through {@link #setSdkExecutor(Executor)}.
+     *
+     * Defaults to {@link android.os.Process#THREAD_PRIORITY_BACKGROUND}
+     * @param priority An {@link Integer} specifying the thread priority.
+     */
+    public static void setSdkThreadPriority(int priority) {
+        BranchSdkExecutor.setThreadPriority(priority);
+    }
+
+    /**
+     * Keeps connections to the Branch API open between requests, so requests made during a session
+     * share the TCP and TLS handshake of the first one. Only applies to the default network layer.
+     */
+    public static void enableConnectionReuse() {
+        BranchRemoteInterfaceUrlConnection.setConnectionReuseEnabled(true);
+    }
+
+    /**
+     * Derives the read timeout from the round trip times measured for each Branch API path,
+     * instead of always using {@link #setNetworkTimeout(int)}. Paths that are fast on the current
+     * network give up sooner on a dead connection, slow ones get more time, and each request that
+     * times out doubles the timeout of its path until the next response. The configured timeout is
+     * used until a path has been measured, {@link #setNetworkConnectTimeout(int)} is always used.
+     *
+     * @param minTimeout The shortest timeout in milliseconds an adapted timeout can be.
+     * @param maxTimeout The longest timeout in milliseconds an adapted timeout can be.
+     */
+    public static void enableAdaptiveTimeouts(int minTimeout, int maxTimeout) {
+        if (minTimeout > 0 && maxTimeout >= minTimeout) {
+            BranchRttEstimator.getInstance().enable(minTimeout, maxTimeout);
+        }
+    }
+
+    /**
+     * Keeps responses to GET requests whose content rarely changes, such as the app config, in
+     * the app cache directory. A cached response is used without a request
+     * while the server or the SDK considers it fresh, and is then revalidated with its ETag, so an
+     * unchanged response is not downloaded again.
+     */
+    public static void enableResponseCache() {
+        BranchHttpCache.setEnabled(true);
+    }
+
+    /**
+     * Stops sending requests to a Branch API host after consecutive attempts fail with a server
+     * error, a timeout or no connectivity. Requests stay queued while the host is down, and after a
+     * short while a single request is sent to check whether it is back. Without the circuit
+     * breaker every queued request goes through all of its retries on its own.
+     */
+    public static void enableCircuitBreaker() {
+        BranchCircuitBreaker.getInstance().setEnabled(true);
+    }
+
+    /**
+     * Sets the listener notified whenever the circuit breaker of a Branch API host opens, lets a
+     * probe through or closes again, see {@link #enableCircuitBreaker()}.
+     *
+     * @param listener A {@link BranchCircuitBreaker.Listener}, or null to stop listening.
+     */
+    public static void setCircuitBreakerListener(BranchCircuitBreaker.Listener listener) {
+        BranchCircuitBreaker.getInstance().setListener(listener);
+    }
+
+    /**
+     * Opens a connection to the Branch API in the background as soon as the SDK is created, while
+     * the install referrer, advertising id and user agent are still being collected. The first
+     * request then finds the DNS lookup and the TCP and TLS handshakes already done. Call this
+     * before {@link #getAutoInstance(Context)}. Only applies to the default network layer, and
+     * nothing is sent while tracking is disabled.
+     */
+    public static void enableConnectionPrewarm() {
+        enableConnectionPrewarm_ = true;
+    }
+
+    private void prewarmConnectionIfEnabled() {
+        if (!enableConnectionPrewarm_ || trackingController.isTrackingDisabled()
+                || !(branchRemoteInterface_ instanceof BranchRemoteInterfaceUrlConnection)) {
+            return;
+        }
+        final BranchRemoteInterfaceUrlConnection remoteInterface = (BranchRemoteInterfaceUrlConnection) branchRemoteInterface_;
+        final String baseUrl = prefHelper_.getAPIBaseUrl();
+        BranchSdkExecutor.getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                remoteInterface.prewarmConnection(baseUrl);
+            }
+        });
+    }
+
+    /**
+     * @return A {@link BranchConnectionStats} with the number of HTTPS requests sent by the default
+     * network layer and how many of them reused an open connection. Only requests sent after
+     * {@link #enableConnectionReuse()} are counted.
+     */
+    public static BranchConnectionStats getConnectionStats() {
+        return BranchRemoteInterfaceUrlConnection.getConnectionStats();
+    }
+
+    /**
+     * Sends request bodies of at least the given size gzipped, saving bytes on large v2 events.
+     * Smaller bodies are sent uncompressed. Only applies to the default network layer.
+     *
+     * @param thresholdBytes Smallest body in bytes to compress, a negative value turns compression off.
+     */
+    public static void enableRequestCompression(int thresholdBytes) {
+        BranchRemoteInterfaceUrlConnection.setRequestCompressionThreshold(thresholdBytes);
+    }
+
     /**
      * Returns true if reading device id is disabled
      *
@@ -911,7 +1149,6 @@ public class Branch {
         if (requestQueue_ == null) return;
         requestQueue_.postInitClear();
         requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.SDK_INIT_WAIT_LOCK);
-        requestQueue_.processNextQueueItem("unlockSDKInitWaitLock");
     }
     
     private boolean isIntentParamsAlreadyConsumed(Activity activity) {
@@ -985,7 +1222,21 @@ public class Branch {
     }
     
     /**
-     * Check and update the URL / URI Skip list in case an update is available.
+     * <p>Sets the shortest time between two checks for a newer URI skip list, which are made when a
+     * session is initialised. Every check that finds no newer list doubles the time until the next
+     * one, up to a week. Default 24 hours, 0 checks on every session.</p>
+     *
+     * @param intervalMillis Minimum time between two checks in milliseconds.
+     */
+    public static void setSkipListRefreshInterval(long intervalMillis) {
+        if (intervalMillis >= 0) {
+            UniversalResourceAnalyser.setMinRefreshInterval(intervalMillis);
+        }
+    }
+
+    /**
+     * Check and update the URL / URI Skip list in case an update is available, at most once per
+     * refresh interval, see {@link #setSkipListRefreshInterval(long)}.
      */
     void updateSkipURLFormats() {
         UniversalResourceAnalyser.getInstance(context_).checkAndUpdateSkipURLFormats(context_);
@@ -1110,7 +1361,6 @@ public class Branch {
     @SuppressWarnings("WeakerAccess")
     public void removeSessionInitializationDelay() {
         requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.USER_SET_WAIT_LOCK);
-        requestQueue_.processNextQueueItem("removeSessionInitializationDelay");
     }
     
     /**
@@ -1324,7 +1574,7 @@ public class Branch {
         ServerResponse response = null;
         try {
             int timeOut = prefHelper_.getTimeout() + 2000; // Time out is set to slightly more than link creation time to prevent any edge case
-            response = new GetShortLinkTask().execute(req).get(timeOut, TimeUnit.MILLISECONDS);
+            response = new GetShortLinkTask().executeTask(req).get(timeOut, TimeUnit.MILLISECONDS);
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
             BranchLogger.d(e.getMessage());
         }
@@ -1503,7 +1753,6 @@ public class Branch {
                 public void onInstallReferrersFinished() {
                     request.removeProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.INSTALL_REFERRER_FETCH_WAIT_LOCK);
                     BranchLogger.v("INSTALL_REFERRER_FETCH_WAIT_LOCK removed");
-                    requestQueue_.processNextQueueItem("onInstallReferrersFinished");
                 }
             });
         }
@@ -1515,7 +1764,6 @@ public class Branch {
             @Override
             public void onAdsParamsFetchFinished() {
                 requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.GAID_FETCH_WAIT_LOCK);
-                requestQueue_.processNextQueueItem("onAdsParamsFetchFinished");
             }
         });
     }
@@ -1535,7 +1783,6 @@ public class Branch {
     void onIntentReady(@NonNull Activity activity) {
         BranchLogger.v("onIntentReady " + activity + " removing INTENT_PENDING_WAIT_LOCK");
         setIntentState(Branch.INTENT_STATE.READY);
-        requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.INTENT_PENDING_WAIT_LOCK);
 
         boolean grabIntentParams = activity.getIntent() != null && getInitState() != Branch.SESSION_STATE.INITIALISED;
 
@@ -1543,7 +1790,8 @@ public class Branch {
             Uri intentData = activity.getIntent().getData();
             readAndStripParam(intentData, activity);
         }
-        requestQueue_.processNextQueueItem("onIntentReady");
+        // Released once the intent params are read, this dispatches the waiting init request
+        requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.INTENT_PENDING_WAIT_LOCK);
     }
 
     /**
@@ -1776,7 +2024,7 @@ public class Branch {
     /**
      * Async Task to create  a short link for synchronous methods
      */
-    private class GetShortLinkTask extends AsyncTask<ServerRequest, Void, ServerResponse> {
+    private class GetShortLinkTask extends BranchAsyncTask<ServerRequest, Void, ServerResponse> {
         @Override protected ServerResponse doInBackground(ServerRequest... serverRequests) {
             return branchRemoteInterface_.make_restful_post(serverRequests[0].getPost(),
                     prefHelper_.getAPIBaseUrl() + Defines.RequestPath.GetURL.getPath(),
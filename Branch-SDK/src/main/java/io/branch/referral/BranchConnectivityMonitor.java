@@ -0,0 +1,132 @@
+package io.branch.referral;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Keeps track of whether the device has a network that can reach the internet, through
+ * {@link ConnectivityManager} network callbacks. From Android 6 on only networks the system has
+ * validated count, so a captive portal or a network without a route out does not. Before that
+ * every connected network counts.
+ * </p>
+ * <p>
+ * Needs the ACCESS_NETWORK_STATE permission. Without it, or before {@link #start(Context)}, the
+ * device is always considered online.
+ * </p>
+ */
+class BranchConnectivityMonitor {
+    interface Listener {
+        /**
+         * Called on the connectivity thread when a validated network appears after there was none.
+         */
+        void onNetworkAvailable();
+    }
+
+    private final Set<Network> validatedNetworks_ = Collections.newSetFromMap(new ConcurrentHashMap<Network, Boolean>());
+    private final Listener listener_;
+    private ConnectivityManager connectivityManager_;
+    private volatile boolean isMonitoring_ = false;
+
+    private final ConnectivityManager.NetworkCallback networkCallback_ = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(@NonNull Network network) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                addNetwork(network);
+            } else {
+                // A network that was validated before the callback was registered may not report
+                // its capabilities again
+                NetworkCapabilities capabilities = connectivityManager_.getNetworkCapabilities(network);
+                if (capabilities != null) {
+                    onCapabilitiesChanged(network, capabilities);
+                }
+            }
+        }
+
+        @Override
+        public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                return;
+            }
+            if (capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)) {
+                addNetwork(network);
+            } else {
+                validatedNetworks_.remove(network);
+            }
+        }
+
+        @Override
+        public void onLost(@NonNull Network network) {
+            validatedNetworks_.remove(network);
+        }
+    };
+
+    BranchConnectivityMonitor(Listener listener) {
+        listener_ = listener;
+    }
+
+    /**
+     * Registers the network callback. The networks already up are reported right after, until
+     * then the device is considered offline.
+     */
+    @SuppressLint("MissingPermission")
+    void start(Context context) {
+        if (PackageManager.PERMISSION_GRANTED != context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE)) {
+            BranchLogger.w("Connectivity monitor requires the ACCESS_NETWORK_STATE permission, requests are sent regardless of connectivity");
+            return;
+        }
+        connectivityManager_ = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager_ == null) {
+            return;
+        }
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        try {
+            isMonitoring_ = true;
+            connectivityManager_.registerNetworkCallback(request, networkCallback_);
+        } catch (RuntimeException e) {
+            // SecurityException on some devices, or too many callbacks registered by the app
+            isMonitoring_ = false;
+            BranchLogger.w("Caught Exception registering network callback " + e.getMessage());
+        }
+    }
+
+    void stop() {
+        if (!isMonitoring_) {
+            return;
+        }
+        isMonitoring_ = false;
+        try {
+            connectivityManager_.unregisterNetworkCallback(networkCallback_);
+        } catch (RuntimeException e) {
+            BranchLogger.w("Caught Exception unregistering network callback " + e.getMessage());
+        }
+        validatedNetworks_.clear();
+    }
+
+    boolean isConnected() {
+        return !isMonitoring_ || !validatedNetworks_.isEmpty();
+    }
+
+    private void addNetwork(Network network) {
+        boolean wasConnected = !validatedNetworks_.isEmpty();
+        if (validatedNetworks_.add(network) && !wasConnected) {
+            BranchLogger.v("Validated network available, resuming requests");
+            listener_.onNetworkAvailable();
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class BranchError {
     public static final int ERR_NETWORK_ON_MAIN = -121;
     /* General error reporting */
     public static final int ERR_OTHER = -122;
+    /* Request was rejected because the request queue is full */
+    public static final int ERR_BRANCH_QUEUE_FULL = -123;
 
     /**
      * <p>Returns the message explaining the error.</p>
@@ -145,6 +147,9 @@ public class BranchError {
         } else if (statusCode == ERR_BRANCH_TASK_TIMEOUT) {
             errorCode_ = ERR_BRANCH_TASK_TIMEOUT;
             errMsg = " Task exceeded timeout.";
+        } else if (statusCode == ERR_BRANCH_QUEUE_FULL) {
+            errorCode_ = ERR_BRANCH_QUEUE_FULL;
+            errMsg = " The request queue is full, the request was not queued.";
         } else {
             errorCode_ = ERR_OTHER;
             errMsg = " See exception message or logs for more details. ";
@@ -105,6 +105,13 @@ object BranchLogger {
         }
     }
 
+    /**
+     * <p>Whether verbose messages are recorded. Check this before building an expensive message,
+     * such as a serialized request body, that would otherwise be thrown away.</p>
+     */
+    @JvmStatic
+    fun isVerboseEnabled(): Boolean = loggingEnabled && shouldLog(BranchLogLevel.VERBOSE)
+
     @JvmStatic
     fun logAlways(message: String) {
         if (message.isNotEmpty()) {
@@ -47,7 +47,7 @@ class BranchPreinstall {
 
     private static void readBranchFile(final String branchFilePath, final Branch branchInstance,
             final Context context) {
-        new Thread(new Runnable() {
+        BranchSdkExecutor.getExecutor().execute(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -76,7 +76,7 @@ class BranchPreinstall {
                     BranchLogger.d(e.getMessage());
                 }
             }
-        }).start();
+        });
     }
 
     public static void getBranchFileContent(JSONObject branchFileContentJson,
@@ -0,0 +1,87 @@
+package io.branch.referral;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Executor owned by the SDK for its background work, so Branch requests neither wait behind nor
+ * hold up other work running on {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR}. The default
+ * pool runs at most {@link #MAX_POOL_SIZE} tasks at once on named threads, enough for a blocking
+ * request on every lane of the {@link ServerRequestQueue} next to the housekeeping tasks, and its
+ * threads exit when idle. Hosts can supply their own executor instead.
+ * </p>
+ */
+class BranchSdkExecutor {
+    // Connection prewarm, preinstall and skip list updates
+    private static final int HOUSEKEEPING_THREADS = 2;
+    // The ordered lane plus every parallel lane
+    static final int MAX_POOL_SIZE = ServerRequestQueue.MAX_PARALLEL_LANES + 1 + HOUSEKEEPING_THREADS;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final String THREAD_NAME_PREFIX = "BranchSdk-";
+
+    private static volatile int threadPriority_ = Process.THREAD_PRIORITY_BACKGROUND;
+    private static volatile Executor hostExecutor_;
+    private static ThreadPoolExecutor defaultExecutor_;
+
+    /**
+     * @return The executor supplied by the host if any, the SDK thread pool otherwise.
+     */
+    static Executor getExecutor() {
+        Executor hostExecutor = hostExecutor_;
+        if (hostExecutor != null) {
+            return hostExecutor;
+        }
+        return getDefaultExecutor();
+    }
+
+    /**
+     * Replaces the SDK thread pool with an executor supplied by the host, null restores the pool.
+     */
+    static void setExecutor(Executor executor) {
+        hostExecutor_ = executor;
+    }
+
+    /**
+     * Sets the {@link Process} priority of the SDK threads, applied once as each thread starts.
+     * {@link android.os.AsyncTask} work runs at {@link Process#THREAD_PRIORITY_BACKGROUND}
+     * regardless, as AsyncTask sets that priority itself.
+     */
+    static void setThreadPriority(int priority) {
+        threadPriority_ = priority;
+    }
+
+    private static synchronized ThreadPoolExecutor getDefaultExecutor() {
+        if (defaultExecutor_ == null) {
+            final AtomicInteger threadCount = new AtomicInteger(1);
+            defaultExecutor_ = new ThreadPoolExecutor(MAX_POOL_SIZE, MAX_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable r) {
+                    final int priority = threadPriority_;
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Process.setThreadPriority(priority);
+                            } catch (Exception e) {
+                                BranchLogger.w("Caught Exception setting the SDK thread priority: " + e.getMessage());
+                            }
+                            r.run();
+                        }
+                    }, THREAD_NAME_PREFIX + threadCount.getAndIncrement());
+                }
+            });
+            defaultExecutor_.allowCoreThreadTimeOut(true);
+        }
+        return defaultExecutor_;
+    }
+}
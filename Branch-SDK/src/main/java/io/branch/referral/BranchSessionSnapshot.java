@@ -0,0 +1,50 @@
+package io.branch.referral;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>
+ * Immutable copy of the identifiers handed out by the last init response: the session id and the
+ * randomized bundle and device tokens. The queue keeps the current snapshot in an atomic reference
+ * and binds it to each request body as the request is sent, so rotating the identifiers never
+ * touches the queued requests.
+ * </p>
+ */
+final class BranchSessionSnapshot {
+    private static final String[] IDENTITY_KEYS = {
+            Defines.Jsonkey.SessionID.getKey(),
+            Defines.Jsonkey.RandomizedBundleToken.getKey(),
+            Defines.Jsonkey.RandomizedDeviceToken.getKey()
+    };
+
+    private final String[] values_;
+
+    BranchSessionSnapshot(String sessionId, String randomizedBundleToken, String randomizedDeviceToken) {
+        values_ = new String[]{sessionId, randomizedBundleToken, randomizedDeviceToken};
+    }
+
+    static BranchSessionSnapshot fromPrefs(@NonNull PrefHelper prefHelper) {
+        return new BranchSessionSnapshot(prefHelper.getSessionID(), prefHelper.getRandomizedBundleToken(), prefHelper.getRandomizedDeviceToken());
+    }
+
+    /**
+     * Replaces the identifiers already present at the top level of the given body with the ones of
+     * this snapshot. Keys the body does not carry are left out, as before.
+     *
+     * @param post The request body about to be sent. It is modified in place.
+     */
+    void bind(@NonNull JSONObject post) {
+        for (int i = 0; i < IDENTITY_KEYS.length; i++) {
+            if (post.has(IDENTITY_KEYS[i])) {
+                try {
+                    post.put(IDENTITY_KEYS[i], values_[i]);
+                } catch (JSONException e) {
+                    BranchLogger.w("Caught JSONException " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -379,7 +379,8 @@ public class Defines {
      */
     public enum HeaderKey {
         RequestId("X-Branch-Request-Id"),
-        SendCloseRequest("X-Branch-Send-Close-Request");
+        SendCloseRequest("X-Branch-Send-Close-Request"),
+        RetryAfter("Retry-After");
 
         private final String key;
 
@@ -443,4 +444,35 @@ public class Defines {
          */
         NONE
     }
+
+    /**
+     * <p>
+     * Defines what the request queue does when a new request arrives while it is at capacity.
+     * Session initialisation requests are always queued.
+     * </p>
+     */
+    public enum QueueOverflowPolicy {
+        /**
+         * Drops the oldest request of the lowest priority queued, which is an analytics event
+         * whenever one is queued (Default)
+         */
+        DROP_OLDEST_ANALYTICS,
+
+        /**
+         * Drops the new request
+         */
+        DROP_NEWEST,
+
+        /**
+         * Moves the oldest request of the lowest priority to a file on disk. Spilled requests are
+         * queued again as the queue drains, without their callbacks. Requests that cannot be
+         * stored are dropped.
+         */
+        SPILL_TO_DISK,
+
+        /**
+         * Fails the new request with {@link io.branch.referral.BranchError#ERR_BRANCH_QUEUE_FULL}
+         */
+        REJECT
+    }
 }
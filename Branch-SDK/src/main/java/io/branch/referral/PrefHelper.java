@@ -48,6 +48,9 @@ public class PrefHelper {
     
     // We should keep this non-zero to give the connection time to recover after a failure
     private static final int INTERVAL_RETRY = 1000;
+
+    // Longest wait between two attempts once the retry interval has backed off
+    private static final int MAX_INTERVAL_RETRY = 30000;
     
     /**
      * Number of times to reattempt connection to the Branch server before giving up and throwing an
@@ -95,6 +98,7 @@ public class PrefHelper {
     
     private static final String KEY_RETRY_COUNT = "bnc_retry_count";
     private static final String KEY_RETRY_INTERVAL = "bnc_retry_interval";
+    private static final String KEY_MAX_RETRY_INTERVAL = "bnc_max_retry_interval";
     private static final String KEY_TIMEOUT = "bnc_timeout";
     private static final String KEY_TASK_TIMEOUT = "bnc_task_timeout";
     private static final String KEY_CONNECT_TIMEOUT = "bnc_connect_timeout";
@@ -369,6 +373,28 @@ public class PrefHelper {
         return getInteger(KEY_RETRY_INTERVAL, INTERVAL_RETRY);
     }
 
+    /**
+     * <p>Sets the longest time in milliseconds to wait between two attempts of a request to the
+     * Branch API. The wait starts at the retry interval and doubles with every attempt.</p>
+     *
+     * @param maxRetryInt An {@link Integer} value specifying the maximum number of milliseconds to
+     *                    wait before re-attempting a request.
+     */
+    public void setMaxRetryInterval(int maxRetryInt) {
+        setInteger(KEY_MAX_RETRY_INTERVAL, maxRetryInt);
+    }
+
+    /**
+     * <p>Gets the longest time in milliseconds to wait between two attempts of a request to the
+     * Branch API.</p>
+     *
+     * @return An {@link Integer} value containing the currently set maximum retry interval in
+     * milliseconds.
+     */
+    public int getMaxRetryInterval() {
+        return getInteger(KEY_MAX_RETRY_INTERVAL, MAX_INTERVAL_RETRY);
+    }
+
     /**
      * In cases of persistent no internet connection or offline modes,
      * set a maximum number of attempts for the Branch Request to be tried.
@@ -420,6 +446,8 @@ public class PrefHelper {
             if (Branch.getInstance() != null) {
                 Branch.getInstance().linkCache_.clear();
                 Branch.getInstance().requestQueue_.clear();
+                // The identifiers of the previous key were just cleared
+                Branch.getInstance().requestQueue_.updateSessionSnapshot();
             }
 
             return true;
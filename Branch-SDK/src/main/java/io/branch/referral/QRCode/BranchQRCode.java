@@ -249,8 +249,12 @@ public class BranchQRCode {
             @Override
             public void onDataReceived(ServerResponse data) {
                 try {
-                    String qrCodeString = data.getObject().getString(Defines.Jsonkey.QRCodeResponseString.getKey());
-                    byte[] qrCodeBytes = Base64.decode(qrCodeString, Base64.DEFAULT);
+                    byte[] qrCodeBytes = data.getBinaryData();
+                    if (qrCodeBytes == null) {
+                        // Custom network layers return the image Base64 encoded in the JSON body
+                        String qrCodeString = data.getObject().getString(Defines.Jsonkey.QRCodeResponseString.getKey());
+                        qrCodeBytes = Base64.decode(qrCodeString, Base64.DEFAULT);
+                    }
 
                     final JSONObject cacheParamsJSON = new JSONObject(parameters);
                     BranchQRCodeCache.getInstance().addQRCodeToCache(cacheParamsJSON, qrCodeBytes);
@@ -274,7 +278,12 @@ public class BranchQRCode {
         getQRCodeAsData(activity, branchUniversalObject, linkProperties, new BranchQRCodeDataHandler() {
             @Override
             public void onSuccess(byte[] qrCodeData) {
+                // Only decoded here, apps asking for the data get the image bytes as received
                 Bitmap bmp = BitmapFactory.decodeByteArray(qrCodeData, 0, qrCodeData.length);
+                if (bmp == null) {
+                    callback.onFailure(new Exception("Failed to decode QR code image"));
+                    return;
+                }
                 callback.onSuccess(bmp);
             }
 
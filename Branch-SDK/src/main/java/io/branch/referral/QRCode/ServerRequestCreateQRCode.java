@@ -63,6 +63,11 @@ public class ServerRequestCreateQRCode extends ServerRequest {
         return false;
     }
 
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.USER_FACING;
+    }
+
     @Override
     public void clearCallbacks() {
         callback_ = null;
@@ -65,8 +65,30 @@ public abstract class ServerRequest {
         V2
     }
 
+    /**
+     * Scheduling priority of a request in the {@link ServerRequestQueue}, from highest to lowest.
+     */
+    public enum REQUEST_PRIORITY {
+        INIT,
+        USER_FACING,
+        DEFAULT,
+        ANALYTICS
+    }
+
     public int currentRetryCount = 0;
 
+    // Position within its priority in the ServerRequestQueue, assigned when queued. 0 until then.
+    long queueSequence_ = 0;
+
+    // Queue holding this request, told about changes to its wait locks. Null while not queued.
+    volatile ServerRequestQueue queue_;
+
+    // Dispatch lane assigned by the ServerRequestQueue, see ServerRequestQueue#ORDERED_LANE
+    int lane_ = ServerRequestQueue.ORDERED_LANE;
+
+    // Set while this request holds the probe of the half open circuit breaker for its host
+    volatile boolean holdsBreakerProbe_ = false;
+
     /**
      * <p>Creates an instance of ServerRequest.</p>
      *
@@ -170,6 +192,38 @@ public abstract class ServerRequest {
         return false;
     }
 
+    /**
+     * Specifies whether this request has no ordering dependency on other requests and can therefore
+     * be dispatched on one of the parallel lanes of the {@link ServerRequestQueue} once the session
+     * is initialised. By default requests run on the ordered lane.
+     *
+     * @return A {@link Boolean} whose value is true if the request can run concurrently with others.
+     */
+    boolean canRunOnParallelLane() {
+        return false;
+    }
+
+    /**
+     * Specifies the priority at which the {@link ServerRequestQueue} dispatches this request.
+     * Requests of the same priority run in the order they were queued.
+     *
+     * @return The {@link REQUEST_PRIORITY} of this request, {@link REQUEST_PRIORITY#DEFAULT} by default.
+     */
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.DEFAULT;
+    }
+
+    /**
+     * Specifies whether this request should be written to the {@link ServerRequestJournal} so it
+     * can be sent after a process restart. Only requests that can be rebuilt through
+     * {@link #fromJSON(JSONObject, Context)} and do not depend on a callback should persist.
+     *
+     * @return A {@link Boolean} whose value is true if the request survives process death.
+     */
+    boolean isPersistable() {
+        return false;
+    }
+
     /**
      * Specifies whether this request should add the limit app tracking value
      *
@@ -262,7 +316,9 @@ public abstract class ServerRequest {
      *             as key-value pairs.
      */
     protected void setPost(JSONObject post) throws JSONException {
-        BranchLogger.v("setPost " + post);
+        if (BranchLogger.isVerboseEnabled()) {
+            BranchLogger.v("setPost " + post);
+        }
         params_ = post;
 
         if (getBranchRemoteAPIVersion() == BRANCH_API_VERSION.V1) {
@@ -310,17 +366,34 @@ public abstract class ServerRequest {
      * as key-value pairs and the instrumentation meta data.
      */
     public JSONObject getPostWithInstrumentationValues(ConcurrentHashMap<String, String> instrumentationData) {
+        return getPostWithInstrumentationValues(instrumentationData, null);
+    }
+
+    /**
+     * <p>Same as {@link #getPostWithInstrumentationValues(ConcurrentHashMap)}, with the session
+     * identifiers of the given snapshot bound to the body as it is sent. Only the top level of the
+     * post is copied, nested objects are shared with the request.</p>
+     *
+     * @param instrumentationData {@link ConcurrentHashMap} with instrumentation values
+     * @param sessionSnapshot     The {@link BranchSessionSnapshot} to bind, null to send the
+     *                            identifiers the request was created with.
+     * @return A {@link JSONObject} containing the post data supplied with the current request
+     * as key-value pairs and the instrumentation meta data.
+     */
+    JSONObject getPostWithInstrumentationValues(ConcurrentHashMap<String, String> instrumentationData, BranchSessionSnapshot sessionSnapshot) {
         JSONObject extendedPost = new JSONObject();
         try {
             //Add original parameters
             if (params_ != null) {
-                JSONObject originalParams = new JSONObject(params_.toString());
-                Iterator<String> keys = originalParams.keys();
+                Iterator<String> keys = params_.keys();
                 while (keys.hasNext()) {
                     String key = keys.next();
-                    extendedPost.put(key, originalParams.get(key));
+                    extendedPost.put(key, params_.get(key));
                 }
             }
+            if (sessionSnapshot != null) {
+                sessionSnapshot.bind(extendedPost);
+            }
             // Append instrumentation metadata
             if (instrumentationData.size() > 0) {
                 JSONObject instrObj = new JSONObject();
@@ -453,6 +526,10 @@ public abstract class ServerRequest {
             extendedReq = new ServerRequestRegisterInstall(Defines.RequestPath.RegisterInstall, post, context, initiatedByClient);
         } else if (requestPath.equalsIgnoreCase(Defines.RequestPath.RegisterOpen.getPath())) {
             extendedReq = new ServerRequestRegisterOpen(Defines.RequestPath.RegisterOpen, post, context, initiatedByClient);
+        } else if (requestPath.equalsIgnoreCase(Defines.RequestPath.TrackStandardEvent.getPath())) {
+            extendedReq = new ServerRequestLogEvent(Defines.RequestPath.TrackStandardEvent, post, context);
+        } else if (requestPath.equalsIgnoreCase(Defines.RequestPath.TrackCustomEvent.getPath())) {
+            extendedReq = new ServerRequestLogEvent(Defines.RequestPath.TrackCustomEvent, post, context);
         }
         return extendedReq;
     }
@@ -760,7 +837,13 @@ public abstract class ServerRequest {
      */
     public void addProcessWaitLock(PROCESS_WAIT_LOCK lock) {
         if (lock != null) {
-            locks_.add(lock);
+            synchronized (locks_) {
+                locks_.add(lock);
+            }
+            ServerRequestQueue queue = queue_;
+            if (queue != null) {
+                queue.onProcessWaitLockAdded(this, lock);
+            }
         }
     }
     
@@ -770,11 +853,40 @@ public abstract class ServerRequest {
      * @param lock {@link PROCESS_WAIT_LOCK} type of lock
      */
     public void removeProcessWaitLock(PROCESS_WAIT_LOCK lock) {
-        locks_.remove(lock);
+        boolean isUnblocked = releaseProcessWaitLock(lock);
+        ServerRequestQueue queue = queue_;
+        if (queue != null) {
+            queue.onProcessWaitLockRemoved(this, lock, isUnblocked);
+        }
+    }
+
+    /**
+     * Removes the lock without notifying the queue.
+     *
+     * @return True if this removed the last lock held on the request.
+     */
+    boolean releaseProcessWaitLock(PROCESS_WAIT_LOCK lock) {
+        synchronized (locks_) {
+            return locks_.remove(lock) && locks_.isEmpty();
+        }
+    }
+
+    /**
+     * Check if this request is waiting on the given lock
+     *
+     * @param lock {@link PROCESS_WAIT_LOCK} type of lock
+     * @return True if the lock is still held on this request
+     */
+    boolean hasProcessWaitLock(PROCESS_WAIT_LOCK lock) {
+        synchronized (locks_) {
+            return locks_.contains(lock);
+        }
     }
 
     public String printWaitLocks(){
-        return Arrays.toString(locks_.toArray());
+        synchronized (locks_) {
+            return Arrays.toString(locks_.toArray());
+        }
     }
     
     
@@ -784,7 +896,9 @@ public abstract class ServerRequest {
      * @return True if this request if any pre processing operation pending
      */
     public boolean isWaitingOnProcessToFinish() {
-        return locks_.size() > 0;
+        synchronized (locks_) {
+            return locks_.size() > 0;
+        }
     }
     
     /**
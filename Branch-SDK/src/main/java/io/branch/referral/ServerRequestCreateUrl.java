@@ -175,6 +175,16 @@ class ServerRequestCreateUrl extends ServerRequest {
         return false;
     }
 
+    @Override
+    boolean canRunOnParallelLane() {
+        return true;
+    }
+
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.USER_FACING;
+    }
+
     @Override
     public void
     clearCallbacks() {
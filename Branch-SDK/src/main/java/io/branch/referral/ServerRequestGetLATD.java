@@ -64,6 +64,16 @@ public class ServerRequestGetLATD extends ServerRequest {
         return false;
     }
 
+    @Override
+    boolean canRunOnParallelLane() {
+        return true;
+    }
+
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.USER_FACING;
+    }
+
     @Override
     public void clearCallbacks() {
         callback = null;
@@ -78,6 +78,11 @@ abstract class ServerRequestInitSession extends ServerRequest {
         return true;
     }
 
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.INIT;
+    }
+
     public abstract String getRequestActionName();
 
     static boolean isInitSessionAction(String actionName) {
@@ -113,7 +118,6 @@ abstract class ServerRequestInitSession extends ServerRequest {
                     }
 
                     Branch.getInstance().requestQueue_.unlockProcessWait(PROCESS_WAIT_LOCK.USER_AGENT_STRING_LOCK);
-                    Branch.getInstance().requestQueue_.processNextQueueItem("getUserAgentAsync resumeWith");
                 }
             });
         }
@@ -0,0 +1,358 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Append only, on-disk journal of the requests held by the {@link ServerRequestQueue}, so that
+ * requests still queued when the process dies are sent on the next launch.
+ * </p>
+ * <p>
+ * Every record is a single line of JSON, either adding a request or removing it by id. All disk
+ * access happens on a single background thread, callers only pay for serialising the record.
+ * Records are written straight to the file descriptor without fsync, which is enough to survive
+ * the process being killed. A torn last line after a crash is ignored on recovery.
+ * </p>
+ * <p>
+ * The same format backs the spill file holding requests pushed out of a full queue, see
+ * {@link Defines.QueueOverflowPolicy#SPILL_TO_DISK}.
+ * </p>
+ */
+class ServerRequestJournal {
+    private static final String JOURNAL_FILE = "branch_request_journal";
+    static final String SPILL_FILE = "branch_request_spill";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String KEY_OPERATION = "op";
+    private static final String KEY_ID = "id";
+    private static final String KEY_CREATION_TS = "ts";
+    private static final String KEY_REQUEST = "req";
+    private static final String OPERATION_ADD = "add";
+    private static final String OPERATION_REMOVE = "rm";
+
+    // Minimum number of obsolete records before the journal is rewritten
+    private static final int COMPACTION_THRESHOLD = 64;
+
+    private final File journalFile_;
+    private final File compactionFile_;
+    private final ThreadPoolExecutor diskExecutor_;
+
+    // Only accessed from the disk executor
+    private final Map<String, String> liveRecords_ = new LinkedHashMap<>();
+    private int obsoleteRecordCount_ = 0;
+    private OutputStream appender_;
+    private boolean isReplayed_ = false;
+
+    interface RestoreCallback {
+        /**
+         * Called on the main thread with the requests recovered from the journal.
+         */
+        void onRequestsRestored(@NonNull List<ServerRequest> requests);
+    }
+
+    ServerRequestJournal(Context context) {
+        this(context, JOURNAL_FILE);
+    }
+
+    /**
+     * @param context  Application context.
+     * @param fileName Name of the journal file in the app files directory.
+     */
+    ServerRequestJournal(Context context, final String fileName) {
+        journalFile_ = new File(context.getFilesDir(), fileName);
+        compactionFile_ = new File(context.getFilesDir(), fileName + ".tmp");
+        diskExecutor_ = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                return new Thread(r, "BranchRequestJournal-" + fileName);
+            }
+        });
+        diskExecutor_.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Records a queued request. The record is serialised on the calling thread so later changes to
+     * the request post cannot race with the disk write.
+     *
+     * @param request The {@link ServerRequest} added to the queue.
+     */
+    void recordAdded(ServerRequest request) {
+        JSONObject requestJson = request.toJSON();
+        if (requestJson == null) {
+            return;
+        }
+        final String id = request.uuid;
+        final String record;
+        try {
+            record = new JSONObject()
+                    .put(KEY_OPERATION, OPERATION_ADD)
+                    .put(KEY_ID, id)
+                    .put(KEY_CREATION_TS, request.creation_ts)
+                    .put(KEY_REQUEST, requestJson)
+                    .toString();
+        } catch (JSONException e) {
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+            return;
+        }
+        diskExecutor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureReplayed();
+                if (liveRecords_.put(id, record) != null) {
+                    obsoleteRecordCount_++;
+                }
+                appendRecord(record);
+            }
+        });
+    }
+
+    /**
+     * Records that a request left the queue, whether it was sent, failed or was dropped.
+     *
+     * @param request The {@link ServerRequest} removed from the queue.
+     */
+    void recordRemoved(ServerRequest request) {
+        final String id = request.uuid;
+        diskExecutor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureReplayed();
+                if (liveRecords_.remove(id) == null) {
+                    return;
+                }
+                try {
+                    appendRecord(new JSONObject().put(KEY_OPERATION, OPERATION_REMOVE).put(KEY_ID, id).toString());
+                } catch (JSONException e) {
+                    BranchLogger.w("Caught JSONException " + e.getMessage());
+                }
+                obsoleteRecordCount_ += 2;
+                if (obsoleteRecordCount_ >= COMPACTION_THRESHOLD && obsoleteRecordCount_ > liveRecords_.size()) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * Records that the queue was cleared.
+     */
+    void recordCleared() {
+        diskExecutor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                isReplayed_ = true;
+                liveRecords_.clear();
+                compact();
+            }
+        });
+    }
+
+    /**
+     * Replays the journal from disk and hands the pending requests back on the main thread. The
+     * journal is compacted as part of the recovery.
+     *
+     * @param context  Application context used to rebuild the requests.
+     * @param callback {@link RestoreCallback} receiving the recovered requests.
+     */
+    void restore(final Context context, final RestoreCallback callback) {
+        diskExecutor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureReplayed();
+
+                final List<ServerRequest> requests = new ArrayList<>();
+                Iterator<String> records = liveRecords_.values().iterator();
+                while (records.hasNext()) {
+                    ServerRequest request = toServerRequest(records.next(), context);
+                    if (request != null) {
+                        requests.add(request);
+                    } else {
+                        records.remove();
+                    }
+                }
+                BranchLogger.v("Restored " + requests.size() + " requests from " + journalFile_.getName());
+                deliver(requests, callback);
+            }
+        });
+    }
+
+    /**
+     * Removes up to maxCount of the oldest requests from the journal and hands them back on the
+     * main thread. Used to read back requests spilled out of a full queue.
+     *
+     * @param context  Application context used to rebuild the requests.
+     * @param maxCount Maximum number of requests to take.
+     * @param callback {@link RestoreCallback} receiving the requests, possibly none.
+     */
+    void take(final Context context, final int maxCount, final RestoreCallback callback) {
+        diskExecutor_.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureReplayed();
+
+                final List<ServerRequest> requests = new ArrayList<>();
+                Iterator<Map.Entry<String, String>> records = liveRecords_.entrySet().iterator();
+                while (records.hasNext() && requests.size() < maxCount) {
+                    Map.Entry<String, String> record = records.next();
+                    ServerRequest request = toServerRequest(record.getValue(), context);
+                    if (request != null) {
+                        requests.add(request);
+                    }
+                    records.remove();
+                    try {
+                        appendRecord(new JSONObject().put(KEY_OPERATION, OPERATION_REMOVE).put(KEY_ID, record.getKey()).toString());
+                    } catch (JSONException e) {
+                        BranchLogger.w("Caught JSONException " + e.getMessage());
+                    }
+                    obsoleteRecordCount_ += 2;
+                }
+                if (liveRecords_.isEmpty() || obsoleteRecordCount_ >= COMPACTION_THRESHOLD) {
+                    compact();
+                }
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onRequestsRestored(requests);
+                    }
+                });
+            }
+        });
+    }
+
+    private void ensureReplayed() {
+        if (!isReplayed_) {
+            replayJournal();
+            compact();
+            isReplayed_ = true;
+        }
+    }
+
+    private void deliver(final List<ServerRequest> requests, final RestoreCallback callback) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onRequestsRestored(requests);
+            }
+        });
+    }
+
+    private void replayJournal() {
+        if (!journalFile_.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile_), UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    JSONObject record = new JSONObject(line);
+                    String id = record.getString(KEY_ID);
+                    if (OPERATION_ADD.equals(record.optString(KEY_OPERATION))) {
+                        liveRecords_.put(id, line);
+                    } else {
+                        liveRecords_.remove(id);
+                    }
+                } catch (JSONException e) {
+                    // A partially written record from a process death, skip it
+                    BranchLogger.d("Skipping corrupt request journal record " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            BranchLogger.w("Caught IOException reading request journal " + e.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private ServerRequest toServerRequest(String record, Context context) {
+        try {
+            JSONObject recordJson = new JSONObject(record);
+            ServerRequest request = ServerRequest.fromJSON(recordJson.getJSONObject(KEY_REQUEST), context);
+            if (request != null) {
+                request.uuid = recordJson.getString(KEY_ID);
+                request.creation_ts = recordJson.optLong(KEY_CREATION_TS, request.creation_ts);
+            }
+            return request;
+        } catch (JSONException e) {
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void appendRecord(String record) {
+        try {
+            if (appender_ == null) {
+                appender_ = new FileOutputStream(journalFile_, true);
+            }
+            appender_.write((record + "\n").getBytes(UTF_8));
+        } catch (IOException e) {
+            BranchLogger.w("Caught IOException writing request journal " + e.getMessage());
+            closeQuietly(appender_);
+            appender_ = null;
+        }
+    }
+
+    // Rewrites the journal with one add record per live request and swaps it in atomically.
+    private void compact() {
+        closeQuietly(appender_);
+        appender_ = null;
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(compactionFile_, false);
+            for (String record : liveRecords_.values()) {
+                out.write((record + "\n").getBytes(UTF_8));
+            }
+            out.close();
+            out = null;
+            if (!compactionFile_.renameTo(journalFile_)) {
+                BranchLogger.w("Could not replace the request journal during compaction");
+                return;
+            }
+            obsoleteRecordCount_ = 0;
+        } catch (IOException e) {
+            BranchLogger.w("Caught IOException compacting request journal " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -54,6 +54,10 @@ public class ServerRequestLogEvent extends ServerRequest {
         updateEnvironment(context, reqBody);
     }
 
+    ServerRequestLogEvent(Defines.RequestPath requestPath, JSONObject post, Context context) {
+        super(requestPath, post, context);
+    }
+
     @Override
     protected void setPost(JSONObject post) throws JSONException {
         super.setPost(post);
@@ -78,6 +82,21 @@ public class ServerRequestLogEvent extends ServerRequest {
         return false;
     }
 
+    @Override
+    boolean canRunOnParallelLane() {
+        return true;
+    }
+
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.ANALYTICS;
+    }
+
+    @Override
+    boolean isPersistable() {
+        return true;
+    }
+
     @Override
     public void clearCallbacks() {
     }
@@ -8,44 +8,116 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.branch.referral.network.BranchCircuitBreaker;
+import io.branch.referral.network.BranchRemoteInterface;
+import io.branch.referral.network.BranchRttEstimator;
 
 /**
  * <p>The Branch SDK can queue up requests whilst it is waiting for initialization of a session to
  * complete. This allows you to start sending requests to the Branch API as soon as your app is
  * opened.</p>
+ *
+ * <p>The queue is safe to use from any thread without external locking. It is built on a
+ * {@link ConcurrentSkipListSet}, so adding, removing and peeking are lock free and iteration is
+ * weakly consistent: a walk over the queue sees every request queued before it started and never
+ * fails on concurrent changes. The capacity is enforced by every enqueue evicting at most one
+ * request, so concurrent producers may overshoot it briefly but the queue settles back to it.
+ * Dispatching is serialised by a semaphore guarding the lanes.</p>
  */
 public class ServerRequestQueue {
     private static final String PREF_KEY = "BNCServerRequestQueue";
-    private static final int MAX_ITEMS = 25;
-    private static ServerRequestQueue SharedInstance;
+    static final int MAX_ITEMS = 25;
+    // Lane 0 is reserved for requests that must run strictly in order (init, open, install...)
+    static final int ORDERED_LANE = 0;
+    static final int MAX_PARALLEL_LANES = 4;
+    private static volatile ServerRequestQueue SharedInstance;
     private SharedPreferences sharedPref;
     private SharedPreferences.Editor editor;
-    private final List<ServerRequest> queue;
-    //Object for synchronising operations on server request queue
-    private static final Object reqQueueLockObject = new Object();
+    // Ordered by priority, then by sequence
+    private final ConcurrentSkipListSet<ServerRequest> queue;
+    // The skip list counts its elements in O(n), the size is tracked separately
+    private final AtomicInteger size_ = new AtomicInteger(0);
+    // Requests queued at the front of their priority count down from -1, all others count up from 1.
+    private final AtomicLong nextSequence_ = new AtomicLong(1);
+    private final AtomicLong nextFrontSequence_ = new AtomicLong(-1);
+    // Null unless the request journal was enabled before the SDK was created
+    private final ServerRequestJournal journal_;
+    private final Context context_;
+
+    private volatile int capacity_ = MAX_ITEMS;
+    private volatile Defines.QueueOverflowPolicy overflowPolicy_ = Defines.QueueOverflowPolicy.DROP_OLDEST_ANALYTICS;
+    // Filled for every path up front, never modified structurally afterwards
+    private final EnumMap<Defines.RequestPath, AtomicInteger> droppedRequestCounts_ = new EnumMap<>(Defines.RequestPath.class);
+    // Created the first time SPILL_TO_DISK is selected
+    private volatile ServerRequestJournal spillStore_;
+    private final AtomicBoolean isReadingSpill_ = new AtomicBoolean(false);
+    // Queued requests waiting on each lock. Filled for every lock up front, never modified
+    // structurally afterwards.
+    private final EnumMap<ServerRequest.PROCESS_WAIT_LOCK, Set<ServerRequest>> waitersByLock_ = new EnumMap<>(ServerRequest.PROCESS_WAIT_LOCK.class);
 
     private final Semaphore serverSema_ = new Semaphore(1);
 
-    int networkCount_ = 0;
+    // Request currently in flight on each lane, null when the lane is idle. Written while holding
+    // serverSema_, read by the eviction without it.
+    private final AtomicReferenceArray<ServerRequest> laneOwners_ = new AtomicReferenceArray<>(MAX_PARALLEL_LANES + 1);
+    private volatile int parallelLaneCount_ = 0;
+    private final AtomicInteger nextParallelLane_ = new AtomicInteger(0);
+    // Set while a dispatch is scheduled for when an open circuit breaker lets a probe through
+    private final AtomicBoolean isBreakerWakeUpScheduled_ = new AtomicBoolean(false);
+    // Holds analytics back while there is no validated network, null unless enabled
+    private volatile BranchConnectivityMonitor connectivityMonitor_;
 
     final ConcurrentHashMap<String, String> instrumentationExtraData_ = new ConcurrentHashMap<>();
 
+    // Identifiers bound to each request body as it is sent, replaced whenever an init response
+    // hands out new ones
+    private final AtomicReference<BranchSessionSnapshot> sessionSnapshot_;
+
+    // Single timer thread arming the deadline of every BranchPostTask
+    private static final ScheduledThreadPoolExecutor timeoutScheduler_ = createTimeoutScheduler();
+
+    private static final Comparator<ServerRequest> PRIORITY_ORDER = new Comparator<ServerRequest>() {
+        @Override
+        public int compare(ServerRequest lhs, ServerRequest rhs) {
+            int priorityOrder = lhs.getPriority().compareTo(rhs.getPriority());
+            if (priorityOrder != 0) {
+                return priorityOrder;
+            }
+            return Long.compare(lhs.queueSequence_, rhs.queueSequence_);
+        }
+    };
+
     /**
      * <p>Singleton method to return the pre-initialised, or newly initialise and return, a singleton
      * object of the type {@link ServerRequestQueue}.</p>
@@ -68,11 +140,28 @@ public class ServerRequestQueue {
 
     // Package Private
     static void shutDown() {
-        synchronized (reqQueueLockObject) {
+        synchronized (ServerRequestQueue.class) {
+            if (SharedInstance != null && SharedInstance.connectivityMonitor_ != null) {
+                SharedInstance.connectivityMonitor_.stop();
+            }
             SharedInstance = null;
         }
     }
     
+    private static ScheduledThreadPoolExecutor createTimeoutScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, "BranchTaskTimeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Most deadlines are cancelled long before they fire, do not keep them around
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
     /**
      * <p>The main constructor of the ServerRequestQueue class is private because the class uses the
      * Singleton pattern.</p>
@@ -83,7 +172,42 @@ public class ServerRequestQueue {
     private ServerRequestQueue(Context c) {
         sharedPref = c.getSharedPreferences("BNC_Server_Request_Queue", Context.MODE_PRIVATE);
         editor = sharedPref.edit();
-        queue = Collections.synchronizedList(new LinkedList<ServerRequest>());
+        queue = new ConcurrentSkipListSet<>(PRIORITY_ORDER);
+        context_ = c;
+        sessionSnapshot_ = new AtomicReference<>(BranchSessionSnapshot.fromPrefs(PrefHelper.getInstance(c)));
+        for (Defines.RequestPath path : Defines.RequestPath.values()) {
+            droppedRequestCounts_.put(path, new AtomicInteger(0));
+        }
+        for (ServerRequest.PROCESS_WAIT_LOCK lock : ServerRequest.PROCESS_WAIT_LOCK.values()) {
+            waitersByLock_.put(lock, Collections.newSetFromMap(new ConcurrentHashMap<ServerRequest, Boolean>()));
+        }
+        if (Branch.isRequestJournalEnabled()) {
+            journal_ = new ServerRequestJournal(c);
+            journal_.restore(c, new ServerRequestJournal.RestoreCallback() {
+                @Override
+                public void onRequestsRestored(@NonNull List<ServerRequest> requests) {
+                    handleRestoredRequests(requests, false);
+                }
+            });
+        } else {
+            journal_ = null;
+        }
+        if (Branch.isConnectivityMonitorEnabled()) {
+            connectivityMonitor_ = new BranchConnectivityMonitor(new BranchConnectivityMonitor.Listener() {
+                @Override
+                public void onNetworkAvailable() {
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            processNextQueueItem("onNetworkAvailable");
+                        }
+                    });
+                }
+            });
+            connectivityMonitor_.start(c);
+        } else {
+            connectivityMonitor_ = null;
+        }
     }
     
     /**
@@ -94,9 +218,7 @@ public class ServerRequestQueue {
      * that forms the logical queue for the class.
      */
     public int getSize() {
-        synchronized (reqQueueLockObject) {
-            return queue.size();
-        }
+        return size_.get();
     }
     
     /**
@@ -105,13 +227,220 @@ public class ServerRequestQueue {
      * @param request The {@link ServerRequest} object to add to the queue.
      */
     void enqueue(ServerRequest request) {
-        synchronized (reqQueueLockObject) {
-            if (request != null) {
-                queue.add(request);
-                if (getSize() >= MAX_ITEMS) {
-                    queue.remove(1);
+        enqueue(request, true);
+    }
+
+    /**
+     * Adds the request, applying the {@link Defines.QueueOverflowPolicy} when the queue is full.
+     *
+     * @return A {@link Boolean} whose value is true if the request was queued.
+     */
+    private boolean enqueue(ServerRequest request, boolean journal) {
+        if (request == null) {
+            return false;
+        }
+        Defines.QueueOverflowPolicy policy = overflowPolicy_;
+        boolean isInitRequest = request.getPriority() == ServerRequest.REQUEST_PRIORITY.INIT;
+        if (!isInitRequest && (policy == Defines.QueueOverflowPolicy.DROP_NEWEST || policy == Defines.QueueOverflowPolicy.REJECT)) {
+            // Reserve a slot first so concurrent producers cannot overshoot the capacity
+            int size;
+            do {
+                size = size_.get();
+                if (size >= capacity_) {
+                    countDroppedRequest(request);
+                    if (policy == Defines.QueueOverflowPolicy.REJECT) {
+                        request.handleFailure(BranchError.ERR_BRANCH_QUEUE_FULL, "");
+                    }
+                    return false;
+                }
+            } while (!size_.compareAndSet(size, size + 1));
+            addToQueue(request, false, true);
+        } else {
+            addToQueue(request, false, false);
+        }
+        if (journal && journal_ != null && request.isPersistable()) {
+            journal_.recordAdded(request);
+        }
+        if (size_.get() > capacity_) {
+            ServerRequest evicted = evictLowestPriorityRequest();
+            journalRemoved(evicted);
+            ServerRequestJournal spillStore = spillStore_;
+            if (policy == Defines.QueueOverflowPolicy.SPILL_TO_DISK && evicted != null && evicted.isPersistable() && spillStore != null) {
+                BranchLogger.v("Request queue is full, spilled " + evicted + " to disk");
+                spillStore.recordAdded(evicted);
+            } else if (evicted != null) {
+                countDroppedRequest(evicted);
+            }
+        }
+        return true;
+    }
+
+    private void countDroppedRequest(ServerRequest request) {
+        BranchLogger.w("Request queue is full, dropped " + request);
+        droppedRequestCounts_.get(request.getRequestPath()).incrementAndGet();
+    }
+
+    /**
+     * Sets the number of requests the queue holds before the overflow policy applies.
+     *
+     * @param capacity Maximum number of queued requests, at least 1.
+     */
+    void setCapacity(int capacity) {
+        capacity_ = Math.max(1, capacity);
+    }
+
+    /**
+     * Sets what happens to requests once the queue is at capacity.
+     *
+     * @param policy The {@link Defines.QueueOverflowPolicy} to apply.
+     */
+    void setOverflowPolicy(@NonNull Defines.QueueOverflowPolicy policy) {
+        if (policy == Defines.QueueOverflowPolicy.SPILL_TO_DISK) {
+            synchronized (this) {
+                if (spillStore_ == null) {
+                    spillStore_ = new ServerRequestJournal(context_, ServerRequestJournal.SPILL_FILE);
                 }
             }
+            // Picks up requests spilled by a previous process
+            readBackSpilledRequests();
+        }
+        overflowPolicy_ = policy;
+    }
+
+    /**
+     * @return A copy of the number of requests dropped because the queue was full, by request path.
+     */
+    Map<Defines.RequestPath, Integer> getDroppedRequestCounts() {
+        Map<Defines.RequestPath, Integer> counts = new EnumMap<>(Defines.RequestPath.class);
+        for (Map.Entry<Defines.RequestPath, AtomicInteger> entry : droppedRequestCounts_.entrySet()) {
+            if (entry.getValue().get() > 0) {
+                counts.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return counts;
+    }
+
+    // Refills the queue with spilled requests while it has room, oldest first
+    private void readBackSpilledRequests() {
+        ServerRequestJournal spillStore = spillStore_;
+        int room = capacity_ - size_.get();
+        if (spillStore == null || room <= 0 || !isReadingSpill_.compareAndSet(false, true)) {
+            return;
+        }
+        spillStore.take(context_, room, new ServerRequestJournal.RestoreCallback() {
+            @Override
+            public void onRequestsRestored(@NonNull List<ServerRequest> requests) {
+                isReadingSpill_.set(false);
+                handleRestoredRequests(requests, true);
+            }
+        });
+    }
+
+    // The sequence is assigned before the request enters the set and never changes while it is in
+    // there, so a request that is already queued is taken out first and queueing it again moves it.
+    // isCounted is true when the caller already reserved the slot in size_.
+    private void addToQueue(ServerRequest request, boolean atFront, boolean isCounted) {
+        if (request.queue_ == this) {
+            removeFromQueue(request);
+        }
+        request.lane_ = assignLane(request);
+        request.queueSequence_ = atFront ? nextFrontSequence_.getAndDecrement() : nextSequence_.getAndIncrement();
+        request.queue_ = this;
+        for (ServerRequest.PROCESS_WAIT_LOCK lock : ServerRequest.PROCESS_WAIT_LOCK.values()) {
+            if (request.hasProcessWaitLock(lock)) {
+                waitersByLock_.get(lock).add(request);
+            }
+        }
+        boolean isAdded = queue.add(request);
+        if (isAdded && !isCounted) {
+            size_.incrementAndGet();
+        } else if (!isAdded && isCounted) {
+            size_.decrementAndGet();
+        }
+    }
+
+    // Only the thread that actually takes the request out of the set updates the size and index
+    private boolean removeFromQueue(ServerRequest request) {
+        if (!queue.remove(request)) {
+            return false;
+        }
+        size_.decrementAndGet();
+        request.queue_ = null;
+        for (Set<ServerRequest> waiters : waitersByLock_.values()) {
+            waiters.remove(request);
+        }
+        return true;
+    }
+
+    /**
+     * Indexes a lock added to a request after it was queued.
+     */
+    void onProcessWaitLockAdded(ServerRequest request, ServerRequest.PROCESS_WAIT_LOCK lock) {
+        if (request.queue_ == this) {
+            waitersByLock_.get(lock).add(request);
+        }
+    }
+
+    /**
+     * Called when a lock is removed from a single queued request, dispatches the request if it no
+     * longer waits on anything.
+     */
+    void onProcessWaitLockRemoved(ServerRequest request, ServerRequest.PROCESS_WAIT_LOCK lock, boolean isUnblocked) {
+        waitersByLock_.get(lock).remove(request);
+        if (isUnblocked) {
+            processNextQueueItem("onProcessWaitLockRemoved " + lock);
+        }
+    }
+
+    /**
+     * Removes the oldest request of the lowest priority present, skipping requests in flight. If
+     * another thread takes the chosen request first, the next candidate is tried.
+     *
+     * @return The evicted {@link ServerRequest}, or null if every candidate is in flight.
+     */
+    private ServerRequest evictLowestPriorityRequest() {
+        while (true) {
+            ServerRequest lowest = peekLast();
+            if (lowest == null) {
+                return null;
+            }
+            ServerRequest.REQUEST_PRIORITY lowestPriority = lowest.getPriority();
+            ServerRequest oldest = null;
+            Iterator<ServerRequest> iterator = queue.descendingIterator();
+            while (iterator.hasNext()) {
+                ServerRequest req = iterator.next();
+                if (req.getPriority() != lowestPriority) {
+                    break;
+                }
+                if (!isInFlight(req)) {
+                    oldest = req;
+                }
+            }
+            if (oldest == null) {
+                return null;
+            }
+            if (removeFromQueue(oldest)) {
+                return oldest;
+            }
+        }
+    }
+
+    // A request dispatched concurrently may still look idle here, it is then evicted while it is
+    // being sent, which only costs the journal and drop counters an extra entry.
+    private boolean isInFlight(ServerRequest req) {
+        for (int i = 0; i < laneOwners_.length(); i++) {
+            if (laneOwners_.get(i) == req) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ServerRequest peekLast() {
+        try {
+            return queue.last();
+        } catch (NoSuchElementException e) {
+            return null;
         }
     }
     
@@ -122,27 +451,21 @@ public class ServerRequestQueue {
      * @return The {@link ServerRequest} object at position with index 0 within the queue.
      */
     ServerRequest peek() {
-        ServerRequest req = null;
-        synchronized (reqQueueLockObject) {
-            try {
-                req = queue.get(0);
-            } catch (IndexOutOfBoundsException | NoSuchElementException e) {
-                BranchLogger.w("Caught Exception ServerRequestQueue peek: " + e.getMessage());
-            }
+        try {
+            return queue.first();
+        } catch (NoSuchElementException e) {
+            return null;
         }
-        return req;
     }
 
     public void printQueue(){
         // Only print the queue if the log level is verbose
         if (BranchLogger.getLoggingLevel().getLevel() == BranchLogger.BranchLogLevel.VERBOSE.getLevel()) {
-            synchronized (reqQueueLockObject) {
-                StringBuilder stringBuilder = new StringBuilder();
-                for (int i = 0; i < queue.size(); i++) {
-                    stringBuilder.append(queue.get(i)).append(" with locks ").append(queue.get(i).printWaitLocks()).append("\n");
-                }
-                BranchLogger.v("Queue is: " + stringBuilder);
+            StringBuilder stringBuilder = new StringBuilder();
+            for (ServerRequest req : queue) {
+                stringBuilder.append(req).append(" with locks ").append(req.printWaitLocks()).append("\n");
             }
+            BranchLogger.v("Queue is: " + stringBuilder);
         }
     }
     
@@ -157,37 +480,16 @@ public class ServerRequestQueue {
      * instance if {@link #getSize()} is 6 and index 6 is called.
      */
     ServerRequest peekAt(int index) {
-        ServerRequest req = null;
-        synchronized (reqQueueLockObject) {
-            try {
-                req = queue.get(index);
-            } catch (IndexOutOfBoundsException | NoSuchElementException e) {
-                BranchLogger.e("Caught Exception ServerRequestQueue peekAt " + index + ": " + e.getMessage());
-            }
-        }
-        return req;
-    }
-    
-    /**
-     * <p>As the method name implies, inserts a {@link ServerRequest} into the queue at the index
-     * position specified.</p>
-     *
-     * @param request The {@link ServerRequest} to insert into the queue.
-     * @param index   An {@link Integer} value specifying the index at which to insert the
-     *                supplied {@link ServerRequest} object. Fails silently if the index
-     *                supplied is invalid.
-     */
-    void insert(ServerRequest request, int index) {
-        synchronized (reqQueueLockObject) {
-            try {
-                if (queue.size() < index) {
-                    index = queue.size();
+        if (index >= 0) {
+            int position = 0;
+            for (ServerRequest req : queue) {
+                if (position++ == index) {
+                    return req;
                 }
-                queue.add(index, request);
-            } catch (IndexOutOfBoundsException e) {
-                BranchLogger.e("Caught IndexOutOfBoundsException " + e.getMessage());
             }
         }
+        BranchLogger.e("ServerRequestQueue peekAt " + index + " is out of bounds");
+        return null;
     }
     
     /**
@@ -201,13 +503,9 @@ public class ServerRequestQueue {
      */
     @SuppressWarnings("unused")
     public ServerRequest removeAt(int index) {
-        ServerRequest req = null;
-        synchronized (reqQueueLockObject) {
-            try {
-                req = queue.remove(index);
-            } catch (IndexOutOfBoundsException e) {
-                BranchLogger.e("Caught IndexOutOfBoundsException " + e.getMessage());
-            }
+        ServerRequest req = peekAt(index);
+        if (req != null) {
+            remove(req);
         }
         return req;
     }
@@ -220,13 +518,15 @@ public class ServerRequestQueue {
      * @return A {@link Boolean} whose value is true if the object is removed.
      */
     public boolean remove(ServerRequest request) {
-        boolean isRemoved = false;
-        synchronized (reqQueueLockObject) {
-            try {
-                isRemoved = queue.remove(request);
-            } catch (UnsupportedOperationException e) {
-                BranchLogger.e("Caught UnsupportedOperationException " + e.getMessage());
-            }
+        if (request == null) {
+            return false;
+        }
+        boolean isRemoved = removeFromQueue(request);
+        if (isRemoved) {
+            journalRemoved(request);
+        }
+        if (isRemoved && overflowPolicy_ == Defines.QueueOverflowPolicy.SPILL_TO_DISK) {
+            readBackSpilledRequests();
         }
         return isRemoved;
     }
@@ -235,15 +535,56 @@ public class ServerRequestQueue {
      * <p> Clears all pending requests in the queue </p>
      */
     void clear() {
-        synchronized (reqQueueLockObject) {
-            try {
-                queue.clear();
-            } catch (UnsupportedOperationException e) {
-                BranchLogger.e("Caught UnsupportedOperationException " + e.getMessage());
-            }
+        for (ServerRequest req : queue) {
+            removeFromQueue(req);
+        }
+        if (journal_ != null) {
+            journal_.recordCleared();
+        }
+        ServerRequestJournal spillStore = spillStore_;
+        if (spillStore != null) {
+            spillStore.recordCleared();
         }
     }
     
+    private void journalRemoved(ServerRequest request) {
+        if (journal_ != null && request != null && request.isPersistable()) {
+            journal_.recordRemoved(request);
+        }
+    }
+
+    /**
+     * Puts the requests recovered from a {@link ServerRequestJournal} back in the queue, skipping
+     * {@link #handleNewRequest(ServerRequest)}.
+     *
+     * @param requests The {@link ServerRequest}s still pending when the previous process died, or
+     *                 read back from the spill file.
+     * @param journal  True if the requests are not in the request journal yet.
+     */
+    private void handleRestoredRequests(List<ServerRequest> requests, boolean journal) {
+        Branch branch = Branch.getInstance();
+        for (ServerRequest req : requests) {
+            if (branch != null && branch.getTrackingController().isTrackingDisabled() && !req.prepareExecuteWithoutTracking()) {
+                journalRemoved(req);
+                continue;
+            }
+            if (branch == null || branch.initState_ != Branch.SESSION_STATE.INITIALISED) {
+                req.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.SDK_INIT_WAIT_LOCK);
+            }
+            if (journal) {
+                if (!enqueue(req, true)) {
+                    continue;
+                }
+            } else {
+                addToQueue(req, false, false);
+            }
+            req.onRequestQueued();
+        }
+        if (branch != null) {
+            this.processNextQueueItem("handleRestoredRequests");
+        }
+    }
+
     /**
      * <p>Determines whether the queue contains an install/register request.</p>
      *
@@ -252,13 +593,11 @@ public class ServerRequestQueue {
      * <i>False</i> if not.
      */
     ServerRequestInitSession getSelfInitRequest() {
-        synchronized (reqQueueLockObject) {
-            for (ServerRequest req : queue) {
-                if (req instanceof ServerRequestInitSession) {
-                    ServerRequestInitSession r = (ServerRequestInitSession) req;
-                    if (r.initiatedByClient) {
-                        return r;
-                    }
+        for (ServerRequest req : queue) {
+            if (req instanceof ServerRequestInitSession) {
+                ServerRequestInitSession r = (ServerRequestInitSession) req;
+                if (r.initiatedByClient) {
+                    return r;
                 }
             }
         }
@@ -266,16 +605,21 @@ public class ServerRequestQueue {
     }
     
     /**
-     * Set Process wait lock to false for any open / install request in the queue
+     * Releases the lock on every queued request waiting on it. Only the requests indexed under the
+     * lock are visited, and the queue is dispatched if one of them no longer waits on anything.
      */
     void unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK lock) {
-        synchronized (reqQueueLockObject) {
-            for (ServerRequest req : queue) {
-                if (req != null) {
-                    req.removeProcessWaitLock(lock);
-                }
+        boolean hasUnblockedRequest = false;
+        Set<ServerRequest> waiters = waitersByLock_.get(lock);
+        for (ServerRequest req : waiters) {
+            // Whoever takes the request out of the index releases its lock
+            if (waiters.remove(req)) {
+                hasUnblockedRequest |= req.releaseProcessWaitLock(lock);
             }
         }
+        if (hasUnblockedRequest) {
+            processNextQueueItem("unlockProcessWait " + lock);
+        }
     }
 
     // We must check that there is no other init request that may read or write these values
@@ -308,51 +652,206 @@ public class ServerRequestQueue {
         BranchLogger.v("processNextQueueItem " + callingMethodName);
         this.printQueue();
         try {
+            List<ServerRequest> dispatchList;
             serverSema_.acquire();
-            if (networkCount_ == 0 && this.getSize() > 0) {
-                networkCount_ = 1;
-                ServerRequest req = this.peek();
-
+            try {
+                dispatchList = collectRunnableLaneHeads();
+            } finally {
+                // A lost permit would block every later dispatch and lane release
                 serverSema_.release();
-                if (req != null) {
-                    BranchLogger.d("processNextQueueItem, req " + req);
-                    if (!req.isWaitingOnProcessToFinish()) {
-                        // All request except Install request need a valid RandomizedBundleToken
-                        if (!(req instanceof ServerRequestRegisterInstall) && !hasUser()) {
-                            BranchLogger.d("Branch Error: User session has not been initialized!");
-                            networkCount_ = 0;
-                            req.handleFailure(BranchError.ERR_NO_SESSION, "");
-                        }
-                        // Determine if a session is needed to execute (SDK-271)
-                        else if (requestNeedsSession(req) && !isSessionAvailableForRequest()) {
-                            networkCount_ = 0;
-                            req.handleFailure(BranchError.ERR_NO_SESSION, "");
-                        } else {
-                            executeTimedBranchPostTask(req, Branch.getInstance().prefHelper_.getTaskTimeout());
-                        }
-                    }
-                    else {
-                        networkCount_ = 0;
-                    }
+            }
+
+            for (ServerRequest req : dispatchList) {
+                BranchLogger.d("processNextQueueItem, req " + req + " on lane " + req.lane_);
+                // All request except Install request need a valid RandomizedBundleToken
+                if (!(req instanceof ServerRequestRegisterInstall) && !hasUser()) {
+                    BranchLogger.d("Branch Error: User session has not been initialized!");
+                    releaseLane(req);
+                    releaseBreakerProbe(req);
+                    req.handleFailure(BranchError.ERR_NO_SESSION, "");
                 }
-                else {
-                    this.remove(null); //In case there is any request nullified remove it.
+                // Determine if a session is needed to execute (SDK-271)
+                else if (requestNeedsSession(req) && !isSessionAvailableForRequest()) {
+                    releaseLane(req);
+                    releaseBreakerProbe(req);
+                    req.handleFailure(BranchError.ERR_NO_SESSION, "");
+                } else {
+                    executeTimedBranchPostTask(req);
                 }
             }
-            else {
-                serverSema_.release();
-            }
         } catch (Exception e) {
             BranchLogger.e("Caught Exception " + callingMethodName + " processNextQueueItem: " + e.getMessage() + " stacktrace: " + BranchLogger.stackTraceToString(e));
         }
     }
 
-    void insertRequestAtFront(ServerRequest req) {
-        if (networkCount_ == 0) {
-            this.insert(req, 0);
-        } else {
-            this.insert(req, 1);
+    /**
+     * Walks the queue in order and picks the head of every idle lane that is ready to run. Only the
+     * first request of a lane is ever considered, so ordering holds within each lane. Requests on the
+     * parallel lanes are held back until the session is initialised and no init request is ahead of
+     * them, and requests to a host whose circuit breaker is open stay parked at the head of their
+     * lane. Without a validated network persistable requests (analytics) are held back and the next
+     * request of their lane is considered instead, so init and user facing requests are still sent
+     * and run into their normal timeout if the network is unusable. Busy lanes are skipped and the walk stops as soon as the head of every idle lane has
+     * been seen, so with the default single lane only the first request is visited. Must be called
+     * while holding serverSema_.
+     *
+     * @return The requests to dispatch, their lanes are already marked as busy.
+     */
+    private List<ServerRequest> collectRunnableLaneHeads() {
+        List<ServerRequest> dispatchList = new ArrayList<>();
+        int laneCount = parallelLaneCount_;
+        boolean[] laneSeen = new boolean[MAX_PARALLEL_LANES + 1];
+        int lanesLeft = 0;
+        for (int lane = 0; lane <= laneCount; lane++) {
+            // Nothing can be dispatched on a busy lane
+            laneSeen[lane] = laneOwners_.get(lane) != null;
+            if (!laneSeen[lane]) {
+                lanesLeft++;
+            }
         }
+        boolean initRequestAhead = false;
+        boolean sessionInitialised = Branch.getInstance() != null && Branch.getInstance().getInitState() == Branch.SESSION_STATE.INITIALISED;
+        BranchCircuitBreaker circuitBreaker = BranchCircuitBreaker.getInstance();
+        long breakerWakeUpMillis = -1;
+        // Held requests are dispatched again by the connectivity monitor once a network is back
+        boolean isOffline = isOffline();
+
+        for (ServerRequest req : queue) {
+            if (lanesLeft == 0) {
+                break;
+            }
+            int lane = req.lane_ <= laneCount ? req.lane_ : ORDERED_LANE;
+            boolean isInitRequest = req instanceof ServerRequestInitSession;
+            boolean blockedByInit = lane != ORDERED_LANE && (initRequestAhead || !sessionInitialised);
+            initRequestAhead |= isInitRequest;
+
+            if (laneSeen[lane] || (isOffline && req.isPersistable())) {
+                continue;
+            }
+            laneSeen[lane] = true;
+            lanesLeft--;
+
+            if (req.isWaitingOnProcessToFinish() || blockedByInit) {
+                continue;
+            }
+            String url = req.getRequestUrl();
+            if (!circuitBreaker.tryAcquire(url, req)) {
+                long remainingMillis = circuitBreaker.getRemainingOpenMillis(url);
+                if (remainingMillis >= 0 && (breakerWakeUpMillis < 0 || remainingMillis < breakerWakeUpMillis)) {
+                    breakerWakeUpMillis = remainingMillis;
+                }
+                continue;
+            }
+            req.holdsBreakerProbe_ = circuitBreaker.holdsProbe(url, req);
+            req.lane_ = lane;
+            laneOwners_.set(lane, req);
+            dispatchList.add(req);
+        }
+        if (breakerWakeUpMillis >= 0) {
+            scheduleBreakerWakeUp(breakerWakeUpMillis);
+        }
+        return dispatchList;
+    }
+
+    private boolean isOffline() {
+        BranchConnectivityMonitor connectivityMonitor = connectivityMonitor_;
+        return connectivityMonitor != null && !connectivityMonitor.isConnected();
+    }
+
+    /**
+     * Replaces the connectivity monitor, so tests can simulate a device without a validated network.
+     */
+    void setConnectivityMonitor(BranchConnectivityMonitor connectivityMonitor) {
+        connectivityMonitor_ = connectivityMonitor;
+    }
+
+    // Failures that are expected while the device has no network
+    private static boolean isNetworkFailure(int statusCode) {
+        return statusCode == BranchError.ERR_BRANCH_NO_CONNECTIVITY
+                || statusCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT
+                || statusCode == ERR_BRANCH_TASK_TIMEOUT;
+    }
+
+    // Dispatches again once the open period is over, so parked requests do not wait for the next
+    // request to be queued. While a probe is in flight its result triggers the next dispatch.
+    private void scheduleBreakerWakeUp(long delayMillis) {
+        if (!isBreakerWakeUpScheduled_.compareAndSet(false, true)) {
+            return;
+        }
+        timeoutScheduler_.schedule(new Runnable() {
+            @Override
+            public void run() {
+                isBreakerWakeUpScheduled_.set(false);
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        processNextQueueItem("circuitBreakerWakeUp");
+                    }
+                });
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gives back the circuit breaker probe of a request that was dispatched as the probe but not
+     * sent, so the next request can probe instead. Requests without the probe leave the breaker
+     * untouched.
+     */
+    private void releaseBreakerProbe(ServerRequest req) {
+        if (req.holdsBreakerProbe_) {
+            req.holdsBreakerProbe_ = false;
+            BranchCircuitBreaker.getInstance().release(req.getRequestUrl(), req);
+        }
+    }
+
+    /**
+     * Marks the lane of the given request as idle again. Safe to call more than once per request.
+     */
+    void releaseLane(ServerRequest req) {
+        serverSema_.acquireUninterruptibly();
+        try {
+            int lane = req.lane_;
+            if (lane >= 0 && lane < laneOwners_.length() && laneOwners_.get(lane) == req) {
+                laneOwners_.set(lane, null);
+            }
+        } finally {
+            serverSema_.release();
+        }
+    }
+
+    /**
+     * Sets the number of lanes that may dispatch independent requests (events, short links, LATD)
+     * concurrently once the session is initialised. Init, open and install requests always run on
+     * the ordered lane. 0 keeps every request on the ordered lane.
+     *
+     * @param laneCount Number of parallel lanes, clamped to [0, {@link #MAX_PARALLEL_LANES}].
+     */
+    void setParallelLaneCount(int laneCount) {
+        parallelLaneCount_ = Math.max(0, Math.min(laneCount, MAX_PARALLEL_LANES));
+    }
+
+    int getParallelLaneCount() {
+        return parallelLaneCount_;
+    }
+
+    // Requests are spread round robin across the parallel lanes so a burst of events does not pile
+    // up behind a single slow request.
+    private int assignLane(ServerRequest req) {
+        int laneCount = parallelLaneCount_;
+        if (laneCount == 0 || !req.canRunOnParallelLane()) {
+            return ORDERED_LANE;
+        }
+        return (nextParallelLane_.getAndIncrement() & Integer.MAX_VALUE) % laneCount + 1;
+    }
+
+    /**
+     * <p>Queues the request ahead of every other request of the same priority. A request already in
+     * flight keeps running and the new request is dispatched once its lane is free.</p>
+     *
+     * @param req The {@link ServerRequest} to queue at the front of its priority.
+     */
+    void insertRequestAtFront(ServerRequest req) {
+        addToQueue(req, true, false);
     }
 
     // Determine if a Request needs a Session to proceed.
@@ -385,65 +884,38 @@ public class ServerRequestQueue {
         return !Branch.getInstance().prefHelper_.getRandomizedBundleToken().equals(PrefHelper.NO_STRING_VALUE);
     }
 
-    void updateAllRequestsInQueue() {
-        try {
-            for (int i = 0; i < this.getSize(); i++) {
-                ServerRequest req = this.peekAt(i);
-                if (req != null) {
-                    JSONObject reqJson = req.getPost();
-                    if (reqJson != null) {
-                        if (reqJson.has(Defines.Jsonkey.SessionID.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.SessionID.getKey(), Branch.getInstance().prefHelper_.getSessionID());
-                        }
-                        if (reqJson.has(Defines.Jsonkey.RandomizedBundleToken.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.RandomizedBundleToken.getKey(), Branch.getInstance().prefHelper_.getRandomizedBundleToken());
-                        }
-                        if (reqJson.has(Defines.Jsonkey.RandomizedDeviceToken.getKey())) {
-                            req.getPost().put(Defines.Jsonkey.RandomizedDeviceToken.getKey(), Branch.getInstance().prefHelper_.getRandomizedDeviceToken());
-                        }
-                    }
-                }
-            }
-        } catch (JSONException e) {
-            BranchLogger.e("Caught JSONException " + e.getMessage());
-        }
+    /**
+     * Takes a new snapshot of the session identifiers. Queued requests pick it up when they are
+     * sent, so the queue itself is not touched.
+     */
+    void updateSessionSnapshot() {
+        sessionSnapshot_.set(BranchSessionSnapshot.fromPrefs(Branch.getInstance().prefHelper_));
+    }
+
+    BranchSessionSnapshot getSessionSnapshot() {
+        return sessionSnapshot_.get();
+    }
+
+    // Same as PrefHelper.getTaskTimeout(), with the read timeout adapted to the round trip times
+    // seen for this request when adaptive timeouts are enabled. Never shorter than the static
+    // timeouts, so the connection gives up first and its timeout is retried like any other.
+    private int getTaskTimeout(ServerRequest req) {
+        PrefHelper prefHelper = Branch.getInstance().prefHelper_;
+        int adaptedTimeout = BranchRttEstimator.getInstance().getTimeoutMillis(req.getRequestUrl(), prefHelper.getTimeout()) + prefHelper.getConnectTimeout();
+        return Math.max(prefHelper.getTaskTimeout(), adaptedTimeout);
     }
 
-    private void executeTimedBranchPostTask(final ServerRequest req, final int timeout) {
+    private void executeTimedBranchPostTask(final ServerRequest req) {
         BranchLogger.v("executeTimedBranchPostTask " + req);
         if(req instanceof ServerRequestInitSession){
             BranchLogger.v("callback to be returned " + ((ServerRequestInitSession) req).callback_);
         }
 
-        final CountDownLatch latch = new CountDownLatch(1);
-        final BranchPostTask postTask = new BranchPostTask(req, latch);
-
+        final BranchPostTask postTask = new BranchPostTask(req);
+        postTask.armTimeout(getTaskTimeout(req));
         postTask.executeTask();
-        if (Looper.myLooper() == Looper.getMainLooper()) {
-            new Thread(new Runnable() {
-                @Override public void run() {
-                    awaitTimedBranchPostTask(latch, timeout, postTask);
-                }
-            }).start();
-        } else {
-            awaitTimedBranchPostTask(latch, timeout, postTask);
-        }
     }
 
-    private void awaitTimedBranchPostTask(CountDownLatch latch, int timeout, BranchPostTask postTask) {
-        try {
-            if (!latch.await(timeout, TimeUnit.MILLISECONDS)) {
-                postTask.cancel(true);
-                postTask.onPostExecuteInner(new ServerResponse(postTask.thisReq_.getRequestPath(), ERR_BRANCH_TASK_TIMEOUT, "", ""));
-            }
-        } catch (InterruptedException e) {
-            BranchLogger.e("Caught InterruptedException " + e.getMessage());
-            postTask.cancel(true);
-            postTask.onPostExecuteInner(new ServerResponse(postTask.thisReq_.getRequestPath(), ERR_BRANCH_TASK_TIMEOUT, "", e.getMessage()));
-        }
-    }
-
-
     /**
      * Handles execution of a new request other than open or install.
      * Checks for the session initialisation and adds a install/Open request in front of this request
@@ -476,11 +948,9 @@ public class ServerRequestQueue {
     // If there is 1 (currently being removed) or 0 init requests in the queue, clear the init data
     public boolean canClearInitData() {
         int result = 0;
-        synchronized (reqQueueLockObject) {
-            for(int i = 0; i < queue.size(); i++){
-                if(queue.get(i) instanceof ServerRequestInitSession){
-                    result++;
-                }
+        for (ServerRequest req : queue) {
+            if (req instanceof ServerRequestInitSession) {
+                result++;
             }
         }
         return result <= 1;
@@ -492,55 +962,202 @@ public class ServerRequestQueue {
      * Synchronous-Asynchronous pattern. Should be invoked only form main thread and  the results are
      * published in the main thread.
      */
-    private class BranchPostTask extends BranchAsyncTask<Void, Void, ServerResponse> {
+    private class BranchPostTask extends BranchAsyncTask<Void, Void, Void> {
         ServerRequest thisReq_;
-        final CountDownLatch latch_;
+        // Set once the task completes, either with the server response or by timing out
+        private final AtomicBoolean isCompleted_ = new AtomicBoolean(false);
+        // Deadline of the current attempt
+        private volatile ScheduledFuture<?> timeout_;
+        // Attempts are retried on the timeout scheduler, so no thread waits out the backoff. The
+        // lane stays busy until the last attempt completes. Each attempt goes through the async
+        // remote interface, so no thread waits on the response either unless the network layer
+        // blocks. Every attempt has its own deadline and the backoff before it is not counted, so
+        // a long Retry-After is waited out instead of running into the deadline.
+        private volatile ScheduledFuture<?> retry_;
+        private volatile int retryNumber_ = 0;
 
-        public BranchPostTask(ServerRequest request, CountDownLatch latch) {
+        public BranchPostTask(ServerRequest request) {
             super();
             thisReq_ = request;
-            latch_ = latch;
         }
 
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            thisReq_.onPreExecute();
-            thisReq_.doFinalUpdateOnMainThread();
+        /**
+         * Arms the deadline of the next attempt on the shared timeout scheduler. If the network
+         * call has not returned by then the task is cancelled and completes with
+         * {@link BranchError#ERR_BRANCH_TASK_TIMEOUT}.
+         */
+        void armTimeout(final int timeout) {
+            final int attempt = retryNumber_;
+            timeout_ = timeoutScheduler_.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCompleted_.get()) {
+                        return;
+                    }
+                    BranchPostTask.this.cancel(true);
+                    // Completed on the main thread like any other result, so failure handling and
+                    // callbacks never hold up the other deadlines sharing this thread
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // The attempt may have returned just in time and scheduled a retry
+                            if (attempt == retryNumber_) {
+                                BranchRttEstimator.getInstance().onTimeout(thisReq_.getRequestUrl());
+                                onAttemptFinished(new ServerResponse(thisReq_.getRequestPath(), ERR_BRANCH_TASK_TIMEOUT, "", "Task exceeded " + timeout + "ms"), attempt);
+                            }
+                        }
+                    });
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
         }
 
-        @Override
-        protected ServerResponse doInBackground(Void... voids) {
-            // update queue wait time
-            thisReq_.doFinalUpdateOnBackgroundThread();
+        private void disarmAttemptTimeout() {
+            ScheduledFuture<?> timeout = timeout_;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        private void disarmTimeout() {
+            disarmAttemptTimeout();
+            ScheduledFuture<?> retry = retry_;
+            if (retry != null) {
+                retry.cancel(false);
+            }
+        }
+
+        // Runs the next attempt on the SDK executor once the delay has passed
+        private void scheduleRetry(long delayMillis) {
+            retryNumber_++;
+            BranchLogger.v("Retrying " + thisReq_ + " in " + delayMillis + "ms, retry number " + retryNumber_);
+            retry_ = timeoutScheduler_.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCompleted_.get()) {
+                        return;
+                    }
+                    armTimeout(getTaskTimeout(thisReq_));
+                    BranchSdkExecutor.getExecutor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            sendAttempt();
+                        }
+                    });
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // Starts one attempt, its result is handed to onAttemptFinished on the main thread
+        private void sendAttempt() {
+            final int attempt = retryNumber_;
             if (Branch.getInstance().getTrackingController().isTrackingDisabled() && !thisReq_.prepareExecuteWithoutTracking()) {
-                return new ServerResponse(thisReq_.getRequestPath(), BranchError.ERR_BRANCH_TRACKING_DISABLED, "", "");
+                postAttemptFinished(new ServerResponse(thisReq_.getRequestPath(), BranchError.ERR_BRANCH_TRACKING_DISABLED, "", ""), attempt);
+                return;
             }
             String branchKey = Branch.getInstance().prefHelper_.getBranchKey();
-            ServerResponse result;
+            BranchRemoteInterface.ServerResponseCallback callback = new BranchRemoteInterface.ServerResponseCallback() {
+                @Override
+                public void onServerResponse(ServerResponse result) {
+                    // The network call returned in time, the result is handed over on the main
+                    // thread and a retry arms a deadline of its own
+                    disarmAttemptTimeout();
+                    postAttemptFinished(result, attempt);
+                }
+            };
             if (thisReq_.isGetRequest()) {
-                result = Branch.getInstance().getBranchRemoteInterface().make_restful_get(thisReq_.getRequestUrl(), thisReq_.getGetParams(), thisReq_.getRequestPath(), branchKey);
+                Branch.getInstance().getBranchRemoteInterface().make_restful_get(thisReq_.getRequestUrl(), thisReq_.getGetParams(), thisReq_.getRequestPath(), branchKey, retryNumber_, callback);
             } else {
                 BranchLogger.v("Beginning rest post for " + thisReq_);
-                result = Branch.getInstance().getBranchRemoteInterface().make_restful_post(thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), branchKey);
+                Branch.getInstance().getBranchRemoteInterface().make_restful_post(thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_, sessionSnapshot_.get()), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), branchKey, retryNumber_, callback);
+            }
+        }
+
+        private void postAttemptFinished(final ServerResponse result, final int attempt) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    onAttemptFinished(result, attempt);
+                }
+            });
+        }
+
+        private void onAttemptFinished(ServerResponse serverResponse, int attempt) {
+            // A result arriving after its attempt timed out, was retried or the task completed has
+            // already been accounted for, and must not count towards the circuit breaker again
+            if (isCompleted_.get() || attempt != retryNumber_) {
+                return;
+            }
+            String url = thisReq_.getRequestUrl();
+            BranchCircuitBreaker circuitBreaker = BranchCircuitBreaker.getInstance();
+            // A request failing because the device went offline says nothing about the host. Only
+            // persistable requests wait for the network, all others fail or retry as usual.
+            boolean isParked = serverResponse != null && thisReq_.isPersistable() && isOffline() && isNetworkFailure(serverResponse.getStatusCode());
+            if (serverResponse != null && !isParked) {
+                // The result settles the probe, if this request was one
+                thisReq_.holdsBreakerProbe_ = false;
+                circuitBreaker.onResult(url, serverResponse.getStatusCode());
             }
-            if (latch_ != null) {
-                latch_.countDown();
+            if (isParked) {
+                park("No validated network");
+                return;
+            }
+            if (serverResponse != null && serverResponse.getRetryDelayMillis() >= 0 && circuitBreaker.isClosed(url)) {
+                scheduleRetry(serverResponse.getRetryDelayMillis());
+            } else if (serverResponse != null && !circuitBreaker.isClosed(url) && BranchCircuitBreaker.isOutage(serverResponse.getStatusCode())) {
+                // Once the breaker is open the request is parked in the queue rather than retried
+                // or failed, the probe after the open period sends it again
+                park("Circuit breaker open");
+            } else {
+                onPostExecuteInner(serverResponse);
+            }
+        }
+
+        /**
+         * Completes the task without counting a failure. The request stays at the head of its lane
+         * with its callbacks, and is sent again once the connectivity monitor sees a validated
+         * network or the circuit breaker lets a probe through.
+         */
+        private void park(String reason) {
+            if (!isCompleted_.compareAndSet(false, true)) {
+                return;
+            }
+            disarmTimeout();
+            BranchLogger.d(reason + ", parking " + thisReq_);
+            releaseBreakerProbe(thisReq_);
+            releaseLane(thisReq_);
+            // The network may have come back while the attempt was failing
+            if (!isOffline()) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        processNextQueueItem("park");
+                    }
+                });
             }
-            return result;
         }
 
         @Override
-        protected void onPostExecute(ServerResponse serverResponse) {
-            super.onPostExecute(serverResponse);
-            onPostExecuteInner(serverResponse);
+        protected void onPreExecute() {
+            super.onPreExecute();
+            thisReq_.onPreExecute();
+            thisReq_.doFinalUpdateOnMainThread();
+        }
+
+        @Override
+        protected Void doInBackground(Void... voids) {
+            // update queue wait time
+            thisReq_.doFinalUpdateOnBackgroundThread();
+            sendAttempt();
+            return null;
         }
 
         void onPostExecuteInner(ServerResponse serverResponse) {
             BranchLogger.v("onPostExecuteInner " + this + " " + serverResponse);
-            if (latch_ != null) {
-                latch_.countDown();
+            // The timeout and the network response can race, only the first one completes the task
+            if (!isCompleted_.compareAndSet(false, true)) {
+                return;
             }
+            disarmTimeout();
             if (serverResponse == null) {
                 thisReq_.handleFailure(BranchError.ERR_BRANCH_INVALID_REQUEST, "Null response.");
                 return;
@@ -552,7 +1169,7 @@ public class ServerRequestQueue {
             } else {
                 onRequestFailed(serverResponse, status);
             }
-            ServerRequestQueue.this.networkCount_ = 0;
+            releaseLane(thisReq_);
 
             // In rare cases where this method is called directly (eg. when network calls time out),
             // starting the next queue item can lead to stack over flow. Ensuring that this is
@@ -570,7 +1187,9 @@ public class ServerRequestQueue {
             BranchLogger.v("onRequestSuccess " + serverResponse);
             // If the request succeeded
             @Nullable final JSONObject respJson = serverResponse.getObject();
-            if (respJson == null) {
+            // Binary responses, such as QR code images, carry no JSON
+            final boolean hasBody = respJson != null || serverResponse.getBinaryData() != null;
+            if (!hasBody) {
                 thisReq_.handleFailure(500, "Null response json.");
             }
 
@@ -586,14 +1205,14 @@ public class ServerRequestQueue {
             }
 
             if (thisReq_ instanceof ServerRequestInitSession) {
-                // If this request changes a session update the session-id to queued requests.
-                boolean updateRequestsInQueue = false;
+                // If this request changes a session, queued requests are sent with the new identifiers
+                boolean updateSessionSnapshot = false;
                 if (!Branch.getInstance().isTrackingDisabled() && respJson != null) {
                     // Update PII data only if tracking is disabled
                     try {
                         if (respJson.has(Defines.Jsonkey.SessionID.getKey())) {
                             Branch.getInstance().prefHelper_.setSessionID(respJson.getString(Defines.Jsonkey.SessionID.getKey()));
-                            updateRequestsInQueue = true;
+                            updateSessionSnapshot = true;
                         }
                         if (respJson.has(Defines.Jsonkey.RandomizedBundleToken.getKey())) {
                             String new_Randomized_Bundle_Token = respJson.getString(Defines.Jsonkey.RandomizedBundleToken.getKey());
@@ -601,15 +1220,15 @@ public class ServerRequestQueue {
                                 //On setting a new Randomized Bundle Token clear the link cache
                                 Branch.getInstance().linkCache_.clear();
                                 Branch.getInstance().prefHelper_.setRandomizedBundleToken(new_Randomized_Bundle_Token);
-                                updateRequestsInQueue = true;
+                                updateSessionSnapshot = true;
                             }
                         }
                         if (respJson.has(Defines.Jsonkey.RandomizedDeviceToken.getKey())) {
                             Branch.getInstance().prefHelper_.setRandomizedDeviceToken(respJson.getString(Defines.Jsonkey.RandomizedDeviceToken.getKey()));
-                            updateRequestsInQueue = true;
+                            updateSessionSnapshot = true;
                         }
-                        if (updateRequestsInQueue) {
-                            updateAllRequestsInQueue();
+                        if (updateSessionSnapshot) {
+                            updateSessionSnapshot();
                         }
                     } catch (JSONException ex) {
                         BranchLogger.w("Caught JSONException " + ex.getMessage());
@@ -631,7 +1250,7 @@ public class ServerRequestQueue {
                 }
             }
 
-            if (respJson != null) {
+            if (hasBody) {
                 thisReq_.onRequestSucceeded(serverResponse, Branch.getInstance());
                 ServerRequestQueue.this.remove(thisReq_);
             } else if (thisReq_.shouldRetryOnFail()) {
@@ -655,7 +1274,7 @@ public class ServerRequestQueue {
             } else {
                 //On Network error or Branch is down fail all the pending requests in the queue except
                 //for request which need to be replayed on failure.
-                ServerRequestQueue.this.networkCount_ = 0;
+                releaseLane(thisReq_);
                 thisReq_.handleFailure(status, serverResponse.getFailReason() + " " + serverResponse.getMessage());
             }
 
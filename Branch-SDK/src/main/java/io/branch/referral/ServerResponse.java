@@ -15,6 +15,7 @@ import java.util.Objects;
  * <li>{@link ServerResponse#setPost(Object)}</li>
  * <li>{@link ServerResponse#getObject()}</li>
  * <li>{@link ServerResponse#getArray()}</li>
+ * <li>{@link ServerResponse#getBinaryData()}</li>
  * </ul>
  *
  */
@@ -43,6 +44,16 @@ public class ServerResponse {
 
     private String message_;
 
+    /**
+     * Milliseconds to wait before the request is attempted again, -1 if it is not retried.
+     */
+    private long retryDelayMillis_ = -1;
+
+    /**
+     * Raw body of a response that is not JSON, such as a QR code image.
+     */
+    private byte[] binaryData_;
+
     /**
      * <p>Main constructor method for the {@link ServerResponse} class that allows for the instantiation
      * of a server response object as a direct result of a server call.</p>
@@ -86,6 +97,47 @@ public class ServerResponse {
         post_ = post;
     }
 
+    /**
+     * <p>Sets how long to wait before the request is attempted again.</p>
+     *
+     * @param retryDelayMillis Milliseconds to wait before the next attempt, -1 if the request is
+     *                         not retried.
+     */
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        retryDelayMillis_ = retryDelayMillis;
+    }
+
+    /**
+     * @return Milliseconds to wait before the request is attempted again, -1 if it is not retried.
+     */
+    public long getRetryDelayMillis() {
+        return retryDelayMillis_;
+    }
+
+    /**
+     * @return The request id the Branch API returned for debugging, may be null or empty.
+     */
+    public String getRequestId() {
+        return requestId_;
+    }
+
+    /**
+     * <p>Sets the raw body of a response that is not JSON, such as a QR code image.</p>
+     *
+     * @param binaryData The response body as received.
+     */
+    public void setBinaryData(byte[] binaryData) {
+        binaryData_ = binaryData;
+    }
+
+    /**
+     * @return The raw body of a response that is not JSON, such as a QR code image, or null if the
+     * response was read as JSON.
+     */
+    public byte[] getBinaryData() {
+        return binaryData_;
+    }
+
     /**
      * <p>Checks whether the post data associated with the current request is an instance of a
      * {@link JSONObject} object, and if so type-casts it to the corresponding class type.</p>
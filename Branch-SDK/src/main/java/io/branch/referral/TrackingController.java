@@ -87,6 +87,7 @@ public class TrackingController {
         prefHelper.setAnonID(PrefHelper.NO_STRING_VALUE);
         prefHelper.setReferringUrlQueryParameters(new JSONObject());
         Branch.getInstance().clearPartnerParameters();
+        Branch.getInstance().requestQueue_.updateSessionSnapshot();
     }
     
     private void onTrackingEnabled(Branch.BranchReferralInitListener callback) {
@@ -14,8 +14,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -28,13 +27,23 @@ import javax.net.ssl.HttpsURLConnection;
  */
 
 class UniversalResourceAnalyser {
-    private static JSONObject skipURLFormats;
+    private static volatile JSONObject skipURLFormats;
     private final ArrayList<String> acceptURLFormats;
     private static final String SKIP_URL_FORMATS_KEY = "skip_url_format_key";
     private static final String VERSION_KEY = "version";
     private static final String SKIP_LIST_KEY = "uri_skip_list";
     // This is the path for updating skip url list. Check for the next version of the file
     private static final String UPDATE_URL_PATH = "%sdk/uriskiplist_v#.json";
+    // When the CDN was last asked for a newer list, and how many times in a row there was none
+    private static final String LAST_CHECK_TS_KEY = "bnc_skip_list_last_check_ts";
+    private static final String MISS_COUNT_KEY = "bnc_skip_list_miss_count";
+    static final long DEFAULT_MIN_REFRESH_INTERVAL = 24 * 60 * 60 * 1000;
+    static final long MAX_REFRESH_INTERVAL = 7 * DEFAULT_MIN_REFRESH_INTERVAL;
+
+    private static volatile long minRefreshInterval_ = DEFAULT_MIN_REFRESH_INTERVAL;
+    private static final AtomicBoolean isRefreshRunning_ = new AtomicBoolean(false);
+    // Compiled from the current lists on first use, reset whenever they change
+    private static UrlSkipListMatcher matcher_;
     
     private final JSONObject DEFAULT_SKIP_URL_LIST;
 
@@ -85,70 +94,103 @@ class UniversalResourceAnalyser {
     }
     
     void addToSkipURLFormats(String skipURLFormat) {
-        JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
-        try {
-            if (skipURLArray == null) {
-                skipURLArray = new JSONArray();
-                skipURLFormats.put(SKIP_LIST_KEY, skipURLArray);
+        synchronized (UniversalResourceAnalyser.class) {
+            JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
+            try {
+                if (skipURLArray == null) {
+                    skipURLArray = new JSONArray();
+                    skipURLFormats.put(SKIP_LIST_KEY, skipURLArray);
+                }
+                skipURLArray.put(skipURLFormat);
+            } catch (Exception e) {
+                BranchLogger.d(e.getMessage());
             }
-            skipURLArray.put(skipURLFormat);
-        } catch (Exception e) {
-            BranchLogger.d(e.getMessage());
+            matcher_ = null;
         }
     }
     
     void addToAcceptURLFormats(String acceptUrl) {
-        acceptURLFormats.add(acceptUrl);
+        synchronized (UniversalResourceAnalyser.class) {
+            acceptURLFormats.add(acceptUrl);
+            matcher_ = null;
+        }
     }
     
     void addToAcceptURLFormats(List<String> acceptUrls) {
-        acceptURLFormats.addAll(acceptUrls);
+        synchronized (UniversalResourceAnalyser.class) {
+            acceptURLFormats.addAll(acceptUrls);
+            matcher_ = null;
+        }
     }
     
+    /**
+     * Sets the shortest time between two checks for a newer skip list. Each check that finds no
+     * newer list doubles the time until the next one, up to {@link #MAX_REFRESH_INTERVAL}.
+     */
+    static void setMinRefreshInterval(long intervalMillis) {
+        minRefreshInterval_ = intervalMillis;
+    }
+
     void checkAndUpdateSkipURLFormats(Context context) {
+        PrefHelper prefHelper = PrefHelper.getInstance(context);
+        long nextRefreshTime = getNextRefreshTime(prefHelper.getLong(LAST_CHECK_TS_KEY), prefHelper.getInteger(MISS_COUNT_KEY), minRefreshInterval_);
+        if (System.currentTimeMillis() < nextRefreshTime) {
+            BranchLogger.v("Skip list checked recently, next check after " + nextRefreshTime);
+            return;
+        }
+        // Sessions can be initialised again before the previous check is done
+        if (!isRefreshRunning_.compareAndSet(false, true)) {
+            return;
+        }
         try {
             new UrlSkipListUpdateTask(context).executeTask();
         } catch (Exception e) {
+            isRefreshRunning_.set(false);
             BranchLogger.d(e.getMessage());
         }
     }
+
+    /**
+     * @return The time of the next check, 0 if the list was never checked.
+     */
+    static long getNextRefreshTime(long lastCheckTime, int missCount, long minInterval) {
+        if (lastCheckTime <= 0) {
+            return 0;
+        }
+        long maxInterval = Math.max(minInterval, MAX_REFRESH_INTERVAL);
+        long interval = minInterval;
+        for (int i = 0; i < missCount && interval > 0 && interval < maxInterval; i++) {
+            interval *= 2;
+        }
+        return lastCheckTime + Math.min(interval, maxInterval);
+    }
     
     String getStrippedURL(String url) {
-        String strippedURL = null;
         try {
-            JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
-            if (skipURLArray != null) {
-                for (int i = 0; i < skipURLArray.length(); i++) {
-                    try {
-                        String skipPattern = skipURLArray.getString(i);
-                        Pattern p = Pattern.compile(skipPattern);
-                        Matcher m = p.matcher(url);
-                        if (m.find()) {
-                            strippedURL = skipPattern;
-                            break;
-                        }
-                        
-                    } catch (JSONException e) {
-                        BranchLogger.d(e.getMessage());
-                    }
-                }
-            }
-            if (strippedURL == null) {
-                if (acceptURLFormats.size() > 0) {
-                    for (String skipPattern : acceptURLFormats) {
-                        if (url.matches(skipPattern)) {
-                            strippedURL = url;
-                            break;
+            return getMatcher().getStrippedURL(url);
+        } catch (Exception ex) {
+            return url;
+        }
+    }
+    
+    private UrlSkipListMatcher getMatcher() {
+        synchronized (UniversalResourceAnalyser.class) {
+            if (matcher_ == null) {
+                List<String> skipPatterns = new ArrayList<>();
+                JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
+                if (skipURLArray != null) {
+                    for (int i = 0; i < skipURLArray.length(); i++) {
+                        try {
+                            skipPatterns.add(skipURLArray.getString(i));
+                        } catch (JSONException e) {
+                            BranchLogger.d(e.getMessage());
                         }
                     }
-                } else {
-                    strippedURL = url;
                 }
+                matcher_ = new UrlSkipListMatcher(skipPatterns, acceptURLFormats);
             }
-        } catch (Exception ex) {
-            strippedURL = url;
+            return matcher_;
         }
-        return strippedURL;
     }
     
     private static class UrlSkipListUpdateTask extends BranchAsyncTask<Void, Void, JSONObject> {
@@ -159,6 +201,7 @@ class UniversalResourceAnalyser {
             this.prefHelper = PrefHelper.getInstance(context);
         }
         
+        // Returns the list found, an empty object if there is no newer one, or null if the check failed
         @Override
         protected JSONObject doInBackground(Void... params) {
             TrafficStats.setThreadStatsTag(0);
@@ -166,6 +209,7 @@ class UniversalResourceAnalyser {
             HttpsURLConnection connection = null;
             try {
                 String update_url_path = UPDATE_URL_PATH.replace("%", PrefHelper.getCDNBaseUrl());
+                // Asks for the next version, a miss is a 404 so there is nothing worth caching
                 URL urlObject = new URL(update_url_path.replace("#", Integer.toString(skipURLFormats.optInt(VERSION_KEY) + 1)));
                 connection = (HttpsURLConnection) urlObject.openConnection();
                 connection.setConnectTimeout(TIME_OUT);
@@ -179,6 +223,7 @@ class UniversalResourceAnalyser {
                 }
             } catch (Exception e) {
                 BranchLogger.d(e.getMessage());
+                respObject = null;
             } finally {
                 if (connection != null) {
                     connection.disconnect();
@@ -190,9 +235,21 @@ class UniversalResourceAnalyser {
         @Override
         protected void onPostExecute(JSONObject updatedURLFormatsObj) {
             super.onPostExecute(updatedURLFormatsObj);
+            isRefreshRunning_.set(false);
+            if (updatedURLFormatsObj == null) {
+                // Not counted as a check, the next session tries again
+                return;
+            }
+            prefHelper.setLong(LAST_CHECK_TS_KEY, System.currentTimeMillis());
             if (updatedURLFormatsObj.optInt(VERSION_KEY) > skipURLFormats.optInt(VERSION_KEY)) {
-                skipURLFormats = updatedURLFormatsObj;
+                synchronized (UniversalResourceAnalyser.class) {
+                    skipURLFormats = updatedURLFormatsObj;
+                    matcher_ = null;
+                }
                 prefHelper.setString(SKIP_URL_FORMATS_KEY, skipURLFormats.toString());
+                prefHelper.setInteger(MISS_COUNT_KEY, 0);
+            } else {
+                prefHelper.setInteger(MISS_COUNT_KEY, prefHelper.getInteger(MISS_COUNT_KEY) + 1);
             }
         }
     }
@@ -0,0 +1,163 @@
+package io.branch.referral;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>
+ * Matches URLs against the skip and accept lists of {@link UniversalResourceAnalyser}. The
+ * patterns are compiled once, when the matcher is created for a version of the lists, instead of
+ * on every URL. Each list is also joined into a single alternation, so a URL that matches none of
+ * the patterns, which is most of them, is scanned once per list rather than once per pattern.
+ * </p>
+ * <p>
+ * The results for the last {@link #CACHE_SIZE} URLs are kept, as the same link is often opened
+ * again when the app is brought back to the foreground.
+ * </p>
+ */
+final class UrlSkipListMatcher {
+    static final int CACHE_SIZE = 32;
+    // Stands in for a null result in the cache
+    private static final String NO_MATCH = new String("");
+
+    private final List<String> skipPatternStrings_ = new ArrayList<>();
+    private final List<Pattern> skipPatterns_ = new ArrayList<>();
+    private final Pattern combinedSkipPattern_;
+    private final List<Pattern> acceptPatterns_ = new ArrayList<>();
+    private final Pattern combinedAcceptPattern_;
+
+    // Guarded by itself
+    private final LinkedHashMap<String, String> results_ = new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param skipPatterns   Patterns of URLs that must not be reported, in the order they are
+     *                       checked.
+     * @param acceptPatterns Patterns of the only URLs that are reported, empty to report all URLs
+     *                       that are not skipped.
+     */
+    UrlSkipListMatcher(List<String> skipPatterns, List<String> acceptPatterns) {
+        for (String skipPattern : skipPatterns) {
+            Pattern pattern = compile(skipPattern);
+            if (pattern != null) {
+                skipPatternStrings_.add(skipPattern);
+                skipPatterns_.add(pattern);
+            }
+        }
+        combinedSkipPattern_ = combine(skipPatternStrings_);
+
+        List<String> acceptPatternStrings = new ArrayList<>();
+        for (String acceptPattern : acceptPatterns) {
+            Pattern pattern = compile(acceptPattern);
+            if (pattern != null) {
+                acceptPatternStrings.add(acceptPattern);
+                acceptPatterns_.add(pattern);
+            }
+        }
+        combinedAcceptPattern_ = combine(acceptPatternStrings);
+    }
+
+    /**
+     * @return The first skip pattern found in the URL, the URL itself if it is not skipped and
+     * accepted, or null if it is not skipped but matches none of the accept patterns.
+     */
+    String getStrippedURL(String url) {
+        synchronized (results_) {
+            String result = results_.get(url);
+            if (result != null) {
+                return result == NO_MATCH ? null : result;
+            }
+        }
+        String result = match(url);
+        synchronized (results_) {
+            results_.put(url, result == null ? NO_MATCH : result);
+        }
+        return result;
+    }
+
+    private String match(String url) {
+        String skipPattern = findSkipPattern(url);
+        if (skipPattern != null) {
+            return skipPattern;
+        }
+        if (acceptPatterns_.isEmpty() || isAccepted(url)) {
+            return url;
+        }
+        return null;
+    }
+
+    private String findSkipPattern(String url) {
+        if (combinedSkipPattern_ != null && !combinedSkipPattern_.matcher(url).find()) {
+            return null;
+        }
+        // The combined pattern only tells whether one of them is found, the result is the first
+        // one in the list
+        for (int i = 0; i < skipPatterns_.size(); i++) {
+            if (skipPatterns_.get(i).matcher(url).find()) {
+                return skipPatternStrings_.get(i);
+            }
+        }
+        return null;
+    }
+
+    private boolean isAccepted(String url) {
+        if (combinedAcceptPattern_ != null) {
+            return combinedAcceptPattern_.matcher(url).matches();
+        }
+        for (Pattern acceptPattern : acceptPatterns_) {
+            if (acceptPattern.matcher(url).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern compile(String pattern) {
+        if (pattern == null) {
+            return null;
+        }
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            BranchLogger.w("Ignoring invalid URL pattern " + pattern + ": " + e.getDescription());
+            return null;
+        }
+    }
+
+    /**
+     * @return A pattern matching wherever one of the given patterns matches, or null if they
+     * cannot be joined and have to be tried one by one. Inline flags such as (?i) only apply to
+     * the group they are in, so every pattern keeps its own.
+     */
+    static Pattern combine(List<String> patterns) {
+        if (patterns.size() < 2) {
+            return null;
+        }
+        StringBuilder combined = new StringBuilder();
+        for (String pattern : patterns) {
+            // Back references are numbered across the whole pattern, they would point to another
+            // pattern's groups once joined
+            if (pattern.matches("(?s).*\\\\([1-9]|k<).*")) {
+                return null;
+            }
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern).append(')');
+        }
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            // e.g. the same group name used in two patterns
+            return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package io.branch.referral.network;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.branch.referral.BranchError;
+
+/**
+ * <p>
+ * Process wide circuit breaker for the Branch API, one per host. After a number of consecutive
+ * attempts failing with a server error, a timeout or no connectivity, the breaker for that host
+ * opens and requests to it are held back instead of each going through its own retries. Once the
+ * open period has passed a single request is let through as a probe (half open). The breaker
+ * closes again if the probe gets a response, otherwise it opens for twice as long, up to
+ * {@link #MAX_OPEN_MILLIS}.
+ * </p>
+ */
+public class BranchCircuitBreaker {
+    static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    static final long DEFAULT_OPEN_MILLIS = 5000;
+    static final long MAX_OPEN_MILLIS = 5 * 60 * 1000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Receives the state changes of the breakers. Called on the thread reporting the result or
+     * asking to send the request that caused the change.
+     */
+    public interface Listener {
+        void onStateChanged(String host, State previousState, State newState);
+    }
+
+    private static final BranchCircuitBreaker instance_ = new BranchCircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+
+    private final int failureThreshold_;
+    private final long openMillis_;
+    // Guarded by this
+    private final Map<String, HostState> hosts_ = new HashMap<>();
+    private volatile boolean isEnabled_ = false;
+    private volatile Listener listener_;
+
+    BranchCircuitBreaker(int failureThreshold, long openMillis) {
+        failureThreshold_ = failureThreshold;
+        openMillis_ = openMillis;
+    }
+
+    public static BranchCircuitBreaker getInstance() {
+        return instance_;
+    }
+
+    public void setEnabled(boolean isEnabled) {
+        isEnabled_ = isEnabled;
+    }
+
+    public void setListener(Listener listener) {
+        listener_ = listener;
+    }
+
+    /**
+     * @param requester The request asking to be sent, remembered as the probe if it gets one.
+     * @return true if a request to the given url can be sent now. While the breaker is half open
+     * only the first caller gets true, its request is the probe and must report its result through
+     * {@link #onResult(String, int)} or give it back through {@link #release(String, Object)}.
+     */
+    public boolean tryAcquire(String url, Object requester) {
+        if (!isEnabled_) {
+            return true;
+        }
+        String host = hostOf(url);
+        synchronized (this) {
+            HostState hostState = hosts_.get(host);
+            if (hostState == null || hostState.state_ == State.CLOSED) {
+                return true;
+            }
+            if (hostState.state_ == State.HALF_OPEN || now() < hostState.openUntil_) {
+                return false;
+            }
+            hostState.state_ = State.HALF_OPEN;
+            hostState.probe_ = requester;
+        }
+        notifyListener(host, State.OPEN, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * @return true if requests to the given url are sent normally, false while its breaker is
+     * open or waiting on a probe. Failed attempts are only retried while this is true.
+     */
+    public boolean isClosed(String url) {
+        return getState(url) == State.CLOSED;
+    }
+
+    /**
+     * @return true if the given requester took the probe of the half open breaker for the url
+     * through {@link #tryAcquire(String, Object)} and its result has not been reported yet.
+     */
+    public boolean holdsProbe(String url, Object requester) {
+        if (!isEnabled_ || requester == null) {
+            return false;
+        }
+        synchronized (this) {
+            HostState hostState = hosts_.get(hostOf(url));
+            return hostState != null && hostState.state_ == State.HALF_OPEN && hostState.probe_ == requester;
+        }
+    }
+
+    public State getState(String url) {
+        if (!isEnabled_) {
+            return State.CLOSED;
+        }
+        synchronized (this) {
+            HostState hostState = hosts_.get(hostOf(url));
+            return hostState == null ? State.CLOSED : hostState.state_;
+        }
+    }
+
+    /**
+     * @return Milliseconds until a probe can be sent to the given url, 0 if requests can be sent
+     * now and -1 while the probe is in flight.
+     */
+    public long getRemainingOpenMillis(String url) {
+        if (!isEnabled_) {
+            return 0;
+        }
+        synchronized (this) {
+            HostState hostState = hosts_.get(hostOf(url));
+            if (hostState == null || hostState.state_ == State.CLOSED) {
+                return 0;
+            }
+            if (hostState.state_ == State.HALF_OPEN) {
+                return -1;
+            }
+            return Math.max(0, hostState.openUntil_ - now());
+        }
+    }
+
+    /**
+     * Reports the status code of an attempt to the given url. Any response from the server closes
+     * the breaker, server errors and network failures count towards opening it, and any other
+     * result (tracking disabled, invalid key) says nothing about the host.
+     */
+    public void onResult(String url, int statusCode) {
+        if (!isEnabled_) {
+            return;
+        }
+        if (isOutage(statusCode)) {
+            onFailure(hostOf(url));
+        } else if (statusCode >= 100) {
+            onSuccess(hostOf(url));
+        } else {
+            onInconclusive(hostOf(url), null);
+        }
+    }
+
+    /**
+     * Gives back the probe acquired through {@link #tryAcquire(String, Object)} for a request that
+     * was not sent after all, so the next request can probe instead. Does nothing unless the given
+     * requester holds the probe.
+     */
+    public void release(String url, Object requester) {
+        if (isEnabled_ && requester != null) {
+            onInconclusive(hostOf(url), requester);
+        }
+    }
+
+    private void onFailure(String host) {
+        State previousState;
+        State newState;
+        synchronized (this) {
+            HostState hostState = getOrCreate(host);
+            previousState = hostState.state_;
+            if (previousState == State.CLOSED) {
+                hostState.consecutiveFailures_++;
+                if (hostState.consecutiveFailures_ >= failureThreshold_) {
+                    open(hostState);
+                }
+            } else if (previousState == State.HALF_OPEN) {
+                hostState.openMillis_ = Math.min(hostState.openMillis_ * 2, MAX_OPEN_MILLIS);
+                open(hostState);
+            }
+            // Failures of requests sent before the breaker opened do not extend the open period
+            newState = hostState.state_;
+        }
+        notifyListener(host, previousState, newState);
+    }
+
+    private void onSuccess(String host) {
+        State previousState;
+        synchronized (this) {
+            HostState hostState = hosts_.get(host);
+            if (hostState == null) {
+                return;
+            }
+            previousState = hostState.state_;
+            hosts_.remove(host);
+        }
+        notifyListener(host, previousState, State.CLOSED);
+    }
+
+    // The probe did not reach the host, the next request can probe again right away. A non null
+    // requester must be the one holding the probe.
+    private void onInconclusive(String host, Object requester) {
+        synchronized (this) {
+            HostState hostState = hosts_.get(host);
+            if (hostState == null || hostState.state_ != State.HALF_OPEN) {
+                return;
+            }
+            if (requester != null && hostState.probe_ != requester) {
+                return;
+            }
+            hostState.state_ = State.OPEN;
+            hostState.openUntil_ = now();
+            hostState.probe_ = null;
+        }
+        notifyListener(host, State.HALF_OPEN, State.OPEN);
+    }
+
+    private void open(HostState hostState) {
+        hostState.state_ = State.OPEN;
+        hostState.probe_ = null;
+        hostState.openUntil_ = now() + hostState.openMillis_;
+    }
+
+    private HostState getOrCreate(String host) {
+        HostState hostState = hosts_.get(host);
+        if (hostState == null) {
+            hostState = new HostState(openMillis_);
+            hosts_.put(host, hostState);
+        }
+        return hostState;
+    }
+
+    private void notifyListener(String host, State previousState, State newState) {
+        Listener listener = listener_;
+        if (listener != null && previousState != newState) {
+            listener.onStateChanged(host, previousState, newState);
+        }
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return true if the status code counts towards opening the breaker.
+     */
+    public static boolean isOutage(int statusCode) {
+        return statusCode >= 500
+                || statusCode == BranchError.ERR_BRANCH_NO_CONNECTIVITY
+                || statusCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT
+                || statusCode == BranchError.ERR_BRANCH_TASK_TIMEOUT;
+    }
+
+    static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    private static final class HostState {
+        private State state_ = State.CLOSED;
+        private int consecutiveFailures_ = 0;
+        private long openUntil_ = 0;
+        private long openMillis_;
+        // Request holding the probe while half open
+        private Object probe_;
+
+        HostState(long openMillis) {
+            openMillis_ = openMillis;
+        }
+    }
+}
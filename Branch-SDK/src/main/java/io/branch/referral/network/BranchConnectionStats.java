@@ -0,0 +1,50 @@
+package io.branch.referral.network;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ * Snapshot of how often Branch API requests reused an open connection instead of paying for a new
+ * TCP and TLS handshake. See {@link io.branch.referral.Branch#getConnectionStats()}.
+ * </p>
+ */
+public final class BranchConnectionStats {
+    private final long requestCount_;
+    private final long newConnectionCount_;
+
+    BranchConnectionStats(long requestCount, long newConnectionCount) {
+        requestCount_ = requestCount;
+        newConnectionCount_ = newConnectionCount;
+    }
+
+    /**
+     * @return Number of HTTPS requests sent to the Branch API so far, including the connection
+     * prewarm.
+     */
+    public long getRequestCount() {
+        return requestCount_;
+    }
+
+    /**
+     * @return Number of HTTPS connections opened, each one costing a handshake.
+     */
+    public long getNewConnectionCount() {
+        return newConnectionCount_;
+    }
+
+    /**
+     * @return Number of requests sent over a connection that was already open.
+     */
+    public long getReusedConnectionCount() {
+        return Math.max(0, requestCount_ - newConnectionCount_);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "requests: %d, new connections: %d, reused: %d",
+                requestCount_, newConnectionCount_, getReusedConnectionCount());
+    }
+}
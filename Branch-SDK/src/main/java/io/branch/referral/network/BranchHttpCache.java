@@ -0,0 +1,290 @@
+package io.branch.referral.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.branch.referral.BranchLogger;
+
+/**
+ * <p>
+ * Small disk backed cache for responses to GET requests whose content rarely changes, such as the
+ * app config. An entry is served without a request while it is fresh, which
+ * is decided by the Cache-Control max-age of the response, or by a TTL set by the SDK when the
+ * response has none. Once stale, the entry is revalidated with If-None-Match, and a 304 refreshes
+ * it without transferring the body again.
+ * </p>
+ * <p>
+ * Responses with Cache-Control no-store are never stored. Only the most recently written
+ * {@link #MAX_ENTRIES} responses are kept on disk.
+ * </p>
+ */
+public final class BranchHttpCache {
+    public static final String DIRECTORY_NAME = "branch_http_cache";
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+
+    static final int MAX_ENTRIES = 32;
+    private static final int FORMAT_VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile boolean isEnabled_ = false;
+    private static BranchHttpCache instance_;
+
+    private final File directory_;
+    // Entries read or written during this process, so a hit is not read from disk again
+    private final ConcurrentHashMap<String, Entry> entries_ = new ConcurrentHashMap<>();
+
+    BranchHttpCache(File directory) {
+        directory_ = directory;
+    }
+
+    public static void setEnabled(boolean isEnabled) {
+        isEnabled_ = isEnabled;
+    }
+
+    /**
+     * @param directory Directory holding the cached responses, usually {@link #DIRECTORY_NAME} in
+     *                  the app cache directory. Only used by the first call.
+     * @return The shared cache, or null if it is not enabled.
+     */
+    public static synchronized BranchHttpCache getInstance(File directory) {
+        if (!isEnabled_) {
+            return null;
+        }
+        if (instance_ == null) {
+            instance_ = new BranchHttpCache(directory);
+        }
+        return instance_;
+    }
+
+    /**
+     * @return The cached response for the given key, fresh or not, or null if there is none.
+     */
+    public Entry get(String key) {
+        Entry entry = entries_.get(key);
+        if (entry == null) {
+            entry = read(key);
+            if (entry != null) {
+                entries_.putIfAbsent(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a 200 response, unless its headers say it cannot be cached or it could never be used:
+     * no ETag to revalidate it with and no time during which it is fresh.
+     *
+     * @param ttlMillis How long the response is fresh if it does not say, 0 for no time at all.
+     */
+    public void put(String key, String body, String eTag, String cacheControl, long ttlMillis, long nowMillis) {
+        long expiresAt = getExpiresAt(cacheControl, ttlMillis, nowMillis);
+        if (body == null || expiresAt < 0 || (isEmpty(eTag) && expiresAt <= nowMillis)) {
+            remove(key);
+            return;
+        }
+        Entry entry = new Entry(body, isEmpty(eTag) ? null : eTag, expiresAt);
+        entries_.put(key, entry);
+        write(key, entry);
+    }
+
+    /**
+     * Marks the entry as fresh again after the server answered 304 Not Modified.
+     *
+     * @return The refreshed entry, or null if the response can no longer be cached.
+     */
+    public Entry revalidate(String key, Entry entry, String cacheControl, long ttlMillis, long nowMillis) {
+        long expiresAt = getExpiresAt(cacheControl, ttlMillis, nowMillis);
+        if (expiresAt < 0) {
+            remove(key);
+            return null;
+        }
+        Entry refreshed = entry.withExpiresAt(expiresAt);
+        entries_.put(key, refreshed);
+        write(key, refreshed);
+        return refreshed;
+    }
+
+    public void remove(String key) {
+        entries_.remove(key);
+        File file = fileFor(key);
+        if (file.exists() && !file.delete()) {
+            BranchLogger.d("Could not delete cached response " + file.getName());
+        }
+    }
+
+    /**
+     * @return When the response stops being fresh, or -1 if it must not be stored.
+     */
+    static long getExpiresAt(String cacheControl, long ttlMillis, long nowMillis) {
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.US).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store")) {
+                    return -1;
+                } else if (directive.equals("no-cache")) {
+                    return nowMillis;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        return nowMillis + Math.max(0, Long.parseLong(directive.substring(8).trim())) * 1000;
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return nowMillis + Math.max(0, ttlMillis);
+    }
+
+    private Entry read(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            String eTag = in.readUTF();
+            long expiresAt = in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(new String(body, UTF_8), eTag.isEmpty() ? null : eTag, expiresAt);
+        } catch (IOException e) {
+            BranchLogger.d("Could not read cached response " + file.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    // Written to a temporary file first, so a crash never leaves a truncated entry behind
+    private synchronized void write(String key, Entry entry) {
+        if (!directory_.isDirectory() && !directory_.mkdirs()) {
+            BranchLogger.d("Could not create response cache directory " + directory_);
+            return;
+        }
+        File file = fileFor(key);
+        File tmpFile = new File(directory_, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            byte[] body = entry.body_.getBytes(UTF_8);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeUTF(entry.eTag_ == null ? "" : entry.eTag_);
+            out.writeLong(entry.expiresAt_);
+            out.writeInt(body.length);
+            out.write(body);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                BranchLogger.d("Could not store cached response " + file.getName());
+            }
+        } catch (IOException e) {
+            BranchLogger.d("Could not write cached response " + file.getName() + ": " + e.getMessage());
+        } finally {
+            closeQuietly(out);
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                BranchLogger.d("Could not delete " + tmpFile.getName());
+            }
+        }
+        trim();
+    }
+
+    // Deletes the least recently written entries beyond MAX_ENTRIES
+    private void trim() {
+        File[] files = directory_.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        for (int i = MAX_ENTRIES; i < files.length; i++) {
+            if (!files[i].delete()) {
+                BranchLogger.d("Could not delete cached response " + files[i].getName());
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return new File(directory_, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            return new File(directory_, Integer.toHexString(key.hashCode()));
+        }
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A cached response body. Every response served from it parses the body on its own, so no
+     * two responses share the same JSON objects.
+     */
+    public static final class Entry {
+        private final String body_;
+        private final String eTag_;
+        private final long expiresAt_;
+
+        Entry(String body, String eTag, long expiresAt) {
+            body_ = body;
+            eTag_ = eTag;
+            expiresAt_ = expiresAt;
+        }
+
+        public String getBody() {
+            return body_;
+        }
+
+        /**
+         * @return The ETag to revalidate the entry with, or null if the response had none.
+         */
+        public String getETag() {
+            return eTag_;
+        }
+
+        public boolean isFresh(long nowMillis) {
+            return nowMillis < expiresAt_;
+        }
+
+        Entry withExpiresAt(long expiresAt) {
+            return new Entry(body_, eTag_, expiresAt);
+        }
+    }
+}
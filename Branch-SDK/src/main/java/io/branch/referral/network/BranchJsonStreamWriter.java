@@ -0,0 +1,129 @@
+package io.branch.referral.network;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * <p>
+ * Writes a {@link JSONObject} straight to a {@link Writer}. {@link JSONObject#toString()} builds
+ * the whole document as a String first, this walks the object and writes each token as it goes, so
+ * {@link BranchRequestBody} encodes a body into its reusable buffer without that String. The output
+ * is byte for byte what the Android {@link JSONObject#toString()} produces, strings are escaped the
+ * same way its JSONStringer does.
+ * </p>
+ */
+final class BranchJsonStreamWriter {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private BranchJsonStreamWriter() {
+    }
+
+    static void write(JSONObject object, Writer writer) throws IOException, JSONException {
+        writer.write('{');
+        boolean isFirst = true;
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!isFirst) {
+                writer.write(',');
+            }
+            isFirst = false;
+            writeString(key, writer);
+            writer.write(':');
+            writeValue(object.opt(key), writer);
+        }
+        writer.write('}');
+    }
+
+    static void write(JSONArray array, Writer writer) throws IOException, JSONException {
+        writer.write('[');
+        for (int i = 0; i < array.length(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeValue(array.opt(i), writer);
+        }
+        writer.write(']');
+    }
+
+    private static void writeValue(Object value, Writer writer) throws IOException, JSONException {
+        if (value == null || value == JSONObject.NULL) {
+            writer.write("null");
+        } else if (value instanceof JSONObject) {
+            write((JSONObject) value, writer);
+        } else if (value instanceof JSONArray) {
+            write((JSONArray) value, writer);
+        } else if (value instanceof Boolean) {
+            writer.write(value.toString());
+        } else if (value instanceof Number) {
+            // Rejects NaN and infinities the same way JSONObject#toString() does
+            writer.write(JSONObject.numberToString((Number) value));
+        } else {
+            writeString(value.toString(), writer);
+        }
+    }
+
+    private static void writeString(String value, Writer writer) throws IOException {
+        writer.write('"');
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escaped = null;
+            switch (c) {
+                case '"':
+                    escaped = "\\\"";
+                    break;
+                case '\\':
+                    escaped = "\\\\";
+                    break;
+                case '/':
+                    escaped = "\\/";
+                    break;
+                case '\b':
+                    escaped = "\\b";
+                    break;
+                case '\f':
+                    escaped = "\\f";
+                    break;
+                case '\n':
+                    escaped = "\\n";
+                    break;
+                case '\r':
+                    escaped = "\\r";
+                    break;
+                case '\t':
+                    escaped = "\\t";
+                    break;
+                default:
+                    // Only control characters are written as unicode escapes, everything else is kept as is
+                    if (c > 0x1f) {
+                        continue;
+                    }
+            }
+            // Copy the run of plain characters before this one in a single write
+            if (i > start) {
+                writer.write(value, start, i - start);
+            }
+            if (escaped != null) {
+                writer.write(escaped);
+            } else {
+                writer.write("\\u");
+                writer.write(HEX_DIGITS[(c >> 12) & 0xf]);
+                writer.write(HEX_DIGITS[(c >> 8) & 0xf]);
+                writer.write(HEX_DIGITS[(c >> 4) & 0xf]);
+                writer.write(HEX_DIGITS[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        if (length > start) {
+            writer.write(value, start, length - start);
+        }
+        writer.write('"');
+    }
+}
@@ -8,9 +8,11 @@ import androidx.annotation.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.branch.referral.Branch;
 import io.branch.referral.BranchError;
@@ -23,10 +25,13 @@ import io.branch.referral.ServerResponse;
  * <p>
  * Abstract class for Branch remote interface. This class provides the abstraction layer for network operations between
  * Branch SDK and remote Branch servers. Extend this class for creating custom network interface.
- * Class provide abstract method for implementing RESTful requests to Branch server
+ * Class provide abstract method for implementing RESTful requests to Branch server. Network stacks
+ * with async I/O can also override the asynchronous variants so no thread waits on a request.
  *
  * see {@link #doRestfulGet(String)}
  * {@link #doRestfulPost(String, JSONObject)}
+ * {@link #doRestfulGetAsync(String, BranchResponseCallback)}
+ * {@link #doRestfulPostAsync(String, JSONObject, BranchResponseCallback)}
  * {@link io.branch.referral.network.BranchRemoteInterface.BranchResponse}
  * {@link BranchRemoteException}
  * </p>
@@ -77,10 +82,58 @@ public abstract class BranchRemoteInterface {
      */
     public abstract BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException;
 
+    /**
+     * <p>
+     * Asynchronous variant of {@link #doRestfulGet(String)}. Override this to send requests with the
+     * native async I/O of your HTTP client, the SDK then holds no thread while the request is in
+     * flight. The callback must be called exactly once, from any thread.
+     * The default implementation calls {@link #doRestfulGet(String)} on the calling thread, which
+     * is always a background thread.
+     *
+     * @param url      The url end point
+     * @param callback {@link BranchResponseCallback} receiving the result
+     * </p>
+     */
+    public void doRestfulGetAsync(String url, BranchResponseCallback callback) {
+        BranchResponse response;
+        try {
+            response = doRestfulGet(url);
+        } catch (BranchRemoteException e) {
+            callback.onFailure(e);
+            return;
+        }
+        callback.onResponse(response);
+    }
+
+    /**
+     * <p>
+     * Asynchronous variant of {@link #doRestfulPost(String, JSONObject)}. Override this to send
+     * requests with the native async I/O of your HTTP client, the SDK then holds no thread while the
+     * request is in flight. The callback must be called exactly once, from any thread.
+     * The default implementation calls {@link #doRestfulPost(String, JSONObject)} on the calling
+     * thread, which is always a background thread.
+     *
+     * @param url      The url end point
+     * @param payload  The JSon object payload for the post request
+     * @param callback {@link BranchResponseCallback} receiving the result
+     * </p>
+     */
+    public void doRestfulPostAsync(String url, JSONObject payload, BranchResponseCallback callback) {
+        BranchResponse response;
+        try {
+            response = doRestfulPost(url, payload);
+        } catch (BranchRemoteException e) {
+            callback.onFailure(e);
+            return;
+        }
+        callback.onResponse(response);
+    }
+
     //--------- public methods-----------------//
 
     /**
      * Method for handling the RESTful POST operations to Branch Servers. Internally calls abstract method {@link #doRestfulGet(String)}
+     * Failed attempts are retried on the calling thread, waiting as decided by the retry policy.
      *
      * @param url       The url end point
      * @param params    {@link JSONObject with parameters to the GET call}
@@ -89,11 +142,24 @@ public abstract class BranchRemoteInterface {
      * @return {@link ServerResponse} object representing the result of RESTful GET to Branch Server
      */
     public final ServerResponse make_restful_get(String url, JSONObject params, String tag, String branchKey) {
-        String modifiedUrl = url;
-        params = params != null ? params : new JSONObject();
-        if (addCommonParams(params, branchKey)) {
-            modifiedUrl += this.convertJSONtoString(params);
-        } else {
+        int retryNumber = 0;
+        ServerResponse response = make_restful_get(url, params, tag, branchKey, retryNumber);
+        while (awaitRetry(response)) {
+            response = make_restful_get(url, params, tag, branchKey, ++retryNumber);
+        }
+        return response;
+    }
+
+    /**
+     * Makes a single attempt of a RESTful GET. If the attempt should be retried, the wait before the
+     * next one is set on the result, see {@link ServerResponse#getRetryDelayMillis()}.
+     *
+     * @param retryNumber Number of attempts made before this one.
+     * @return {@link ServerResponse} object representing the result of RESTful GET to Branch Server
+     */
+    public final ServerResponse make_restful_get(String url, JSONObject params, String tag, String branchKey, int retryNumber) {
+        String modifiedUrl = prepareGetUrl(url, params, branchKey, retryNumber);
+        if (modifiedUrl == null) {
             return new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", "");
         }
 
@@ -102,20 +168,38 @@ public abstract class BranchRemoteInterface {
 
         try {
             BranchResponse response = doRestfulGet(modifiedUrl);
-            return processEntityForJSON(response, tag, response.requestId);
+            addRoundTripSample(url, response, reqStartTime);
+            return toServerResponse(response, tag, retryNumber);
         } catch (BranchRemoteException branchError) {
-            return new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
+            addTimeoutSample(url, branchError);
+            return toServerResponse(branchError, tag, retryNumber);
         } finally {
-            // Add total round trip time
-            if (Branch.getInstance() != null) {
-                int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
-                Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
-            }
+            addRoundTripTime(tag, reqStartTime);
+        }
+    }
+
+    /**
+     * Makes a single attempt of a RESTful GET through {@link #doRestfulGetAsync(String, BranchResponseCallback)},
+     * without blocking the calling thread if the implementation is asynchronous. If the attempt
+     * should be retried, the wait before the next one is set on the result.
+     *
+     * @param retryNumber Number of attempts made before this one.
+     * @param callback    {@link ServerResponseCallback} receiving the result exactly once
+     */
+    public final void make_restful_get(String url, JSONObject params, String tag, String branchKey, int retryNumber, ServerResponseCallback callback) {
+        String modifiedUrl = prepareGetUrl(url, params, branchKey, retryNumber);
+        if (modifiedUrl == null) {
+            callback.onServerResponse(new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", ""));
+            return;
         }
+
+        BranchLogger.v("getting " + modifiedUrl);
+        doRestfulGetAsync(modifiedUrl, new AttemptCallback(url, tag, retryNumber, callback));
     }
 
     /**
      * Method for handling the RESTful POST operations to Branch Servers. Internally calls abstract method {@link #doRestfulPost(String, JSONObject)}
+     * Failed attempts are retried on the calling thread, waiting as decided by the retry policy.
      *
      * @param url       The url end point
      * @param body      {@link JSONObject with parameters to the POST call}
@@ -124,28 +208,65 @@ public abstract class BranchRemoteInterface {
      * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
      */
     public final ServerResponse make_restful_post(JSONObject body, String url, String tag, String branchKey) {
-        long reqStartTime = System.currentTimeMillis();
-        body = body != null ? body : new JSONObject();
+        int retryNumber = 0;
+        ServerResponse response = make_restful_post(body, url, tag, branchKey, retryNumber);
+        while (awaitRetry(response)) {
+            response = make_restful_post(body, url, tag, branchKey, ++retryNumber);
+        }
+        return response;
+    }
 
-        if (!addCommonParams(body, branchKey)) {
+    /**
+     * Makes a single attempt of a RESTful POST. If the attempt should be retried, the wait before
+     * the next one is set on the result, see {@link ServerResponse#getRetryDelayMillis()}.
+     *
+     * @param retryNumber Number of attempts made before this one.
+     * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
+     */
+    public final ServerResponse make_restful_post(JSONObject body, String url, String tag, String branchKey, int retryNumber) {
+        long reqStartTime = System.currentTimeMillis();
+        body = preparePostBody(body, url, branchKey, retryNumber);
+        if (body == null) {
             return new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", "");
         }
-        BranchLogger.v("posting to " + url);
-        BranchLogger.v("Post value = " + body.toString());
 
         try {
             BranchResponse response = doRestfulPost(url, body);
-            return processEntityForJSON(response, tag, response.requestId);
+            addRoundTripSample(url, response, reqStartTime);
+            return toServerResponse(response, tag, retryNumber);
         } catch (BranchRemoteException branchError) {
-            return new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
+            addTimeoutSample(url, branchError);
+            return toServerResponse(branchError, tag, retryNumber);
         } finally {
-            if (Branch.getInstance() != null) {
-                int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
-                Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
-            }
+            addRoundTripTime(tag, reqStartTime);
+        }
+    }
+
+    /**
+     * Makes a single attempt of a RESTful POST through {@link #doRestfulPostAsync(String, JSONObject, BranchResponseCallback)},
+     * without blocking the calling thread if the implementation is asynchronous. If the attempt
+     * should be retried, the wait before the next one is set on the result.
+     *
+     * @param retryNumber Number of attempts made before this one.
+     * @param callback    {@link ServerResponseCallback} receiving the result exactly once
+     */
+    public final void make_restful_post(JSONObject body, String url, String tag, String branchKey, int retryNumber, ServerResponseCallback callback) {
+        body = preparePostBody(body, url, branchKey, retryNumber);
+        if (body == null) {
+            callback.onServerResponse(new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", ""));
+            return;
         }
+
+        doRestfulPostAsync(url, body, new AttemptCallback(url, tag, retryNumber, callback));
     }
 
+    /**
+     * Decides whether failed attempts are retried and when. Implementations retrying on their own
+     * keep the default, which never retries.
+     */
+    BranchRetryPolicy getRetryPolicy() {
+        return null;
+    }
 
     //----------- private methods----------------------------//
 
@@ -168,38 +289,138 @@ public abstract class BranchRemoteInterface {
         int statusCode = response.responseCode;
 
         ServerResponse result = new ServerResponse(tag, statusCode, requestId, "");
-        if(!TextUtils.isEmpty(requestId)){
-            BranchLogger.v(String.format(Locale.getDefault(), "Server returned: [%s] Status: [%d]; Data: %s", requestId, statusCode, responseString));
-        } else {
-            BranchLogger.v(String.format("returned %s", responseString));
+        if (response.responseBytes != null) {
+            BranchLogger.v("Server returned " + response.responseBytes.length + " bytes of binary data");
+            result.setBinaryData(response.responseBytes);
+            return result;
+        }
+        // Skip formatting a possibly large body when nobody will see it
+        if (BranchLogger.isVerboseEnabled()) {
+            if (!TextUtils.isEmpty(requestId)) {
+                BranchLogger.v(String.format(Locale.getDefault(), "Server returned: [%s] Status: [%d]; Data: %s", requestId, statusCode, responseString));
+            } else {
+                BranchLogger.v(String.format("returned %s", responseString));
+            }
         }
 
         if (responseString != null) {
+            // Parsed once whether the body holds an object or an array
+            Object json = null;
+            JSONException parseError = null;
             try {
-                JSONObject jsonObj = new JSONObject(responseString);
-                result.setPost(jsonObj);
+                json = new JSONTokener(responseString).nextValue();
             } catch (JSONException ex) {
+                parseError = ex;
+            }
+            if (json instanceof JSONObject || json instanceof JSONArray) {
+                result.setPost(json);
+            } else if (tag.contains(Defines.Jsonkey.QRCodeTag.getKey())) {
                 try {
-                    JSONArray jsonArray = new JSONArray(responseString);
-                    result.setPost(jsonArray);
-                } catch (JSONException ex2) {
-                    if (tag.contains(Defines.Jsonkey.QRCodeTag.getKey())) {
-                        try {
-                            JSONObject jsonObj = new JSONObject();
-                            jsonObj.put(Defines.Jsonkey.QRCodeResponseString.getKey(), responseString);
-                            result.setPost(jsonObj);
-                        } catch (JSONException e) {
-                            BranchLogger.w("Caught JSONException " + e.getMessage());
-                        }
-                    } else {
-                        BranchLogger.w("Caught JSONException " + ex2.getMessage());
-                    }
+                    JSONObject jsonObj = new JSONObject();
+                    jsonObj.put(Defines.Jsonkey.QRCodeResponseString.getKey(), responseString);
+                    result.setPost(jsonObj);
+                } catch (JSONException e) {
+                    BranchLogger.w("Caught JSONException " + e.getMessage());
                 }
+            } else {
+                BranchLogger.w("Caught JSONException " + (parseError != null ? parseError.getMessage() : "Value " + json + " is not a JSON object or array"));
             }
         }
         return result;
     }
 
+    // Returns null if the request cannot be sent without a valid Branch key
+    private String prepareGetUrl(String url, JSONObject params, String branchKey, int retryNumber) {
+        params = params != null ? params : new JSONObject();
+        if (!addCommonParams(params, branchKey)) {
+            return null;
+        }
+        addRetryNumber(params, retryNumber);
+        return url + this.convertJSONtoString(params);
+    }
+
+    // Returns null if the request cannot be sent without a valid Branch key
+    private JSONObject preparePostBody(JSONObject body, String url, String branchKey, int retryNumber) {
+        body = body != null ? body : new JSONObject();
+        if (!addCommonParams(body, branchKey)) {
+            return null;
+        }
+        addRetryNumber(body, retryNumber);
+        BranchLogger.v("posting to " + url);
+        if (BranchLogger.isVerboseEnabled()) {
+            BranchLogger.v("Post value = " + body.toString());
+        }
+        return body;
+    }
+
+    private ServerResponse toServerResponse(BranchResponse response, String tag, int retryNumber) {
+        ServerResponse result = processEntityForJSON(response, tag, response.requestId);
+        setRetryDelay(result, retryNumber, response.retryAfterMillis);
+        return result;
+    }
+
+    private ServerResponse toServerResponse(BranchRemoteException branchError, String tag, int retryNumber) {
+        ServerResponse result = new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
+        setRetryDelay(result, retryNumber, -1);
+        return result;
+    }
+
+    // Add total round trip time
+    private void addRoundTripTime(String tag, long reqStartTime) {
+        if (Branch.getInstance() != null) {
+            int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
+            Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
+        }
+    }
+
+    // Only attempts that got a response from the server tell how long a round trip takes
+    private void addRoundTripSample(String url, BranchResponse response, long reqStartTime) {
+        if (!response.isCached) {
+            BranchRttEstimator.getInstance().addSample(url, System.currentTimeMillis() - reqStartTime);
+        }
+    }
+
+    // A request that timed out gives its path a longer timeout until the next response
+    private void addTimeoutSample(String url, BranchRemoteException branchError) {
+        if (branchError.branchErrorCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT) {
+            BranchRttEstimator.getInstance().onTimeout(url);
+        }
+    }
+
+    private void setRetryDelay(ServerResponse result, int retryNumber, long retryAfterMillis) {
+        BranchRetryPolicy retryPolicy = getRetryPolicy();
+        if (retryPolicy != null && result.getStatusCode() != 200) {
+            result.setRetryDelayMillis(retryPolicy.getRetryDelayMillis(retryNumber, result.getStatusCode(), retryAfterMillis));
+        }
+    }
+
+    // Blocking adapter for callers that need the final result on the current thread
+    private boolean awaitRetry(ServerResponse response) {
+        long delay = response.getRetryDelayMillis();
+        if (delay < 0) {
+            return false;
+        }
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            BranchLogger.d("Retry interrupted " + e.getMessage());
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void addRetryNumber(JSONObject params, int retryNumber) {
+        if (getRetryPolicy() == null) {
+            return;
+        }
+        try {
+            params.put(RETRY_NUMBER, retryNumber);
+        } catch (JSONException e) {
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+        }
+    }
+
     private boolean addCommonParams(JSONObject post, String branch_key) {
         try {
             if (!post.has(Defines.Jsonkey.UserData.getKey())) { // user data already has the sdk in it as part of v2 request
@@ -259,6 +480,12 @@ public abstract class BranchRemoteInterface {
         private final String responseData;
         private final int responseCode;
         String requestId;
+        // Raw body of a binary response, set instead of the response data
+        final byte[] responseBytes;
+        // Wait asked for by a Retry-After header, -1 if there was none
+        long retryAfterMillis = -1;
+        // Served from the response cache, so it tells nothing about the network
+        boolean isCached;
 
         /**
          * Creates a BranchResponse object with response data and status code
@@ -267,9 +494,91 @@ public abstract class BranchRemoteInterface {
          * @param responseCode Standard Http Response code (rfc2616 http error codes)
          */
         public BranchResponse(@Nullable String responseData, int responseCode) {
+            this(responseData, null, responseCode);
+        }
+
+        private BranchResponse(String responseData, byte[] responseBytes, int responseCode) {
             this.responseData = responseData;
+            this.responseBytes = responseBytes;
             this.responseCode = responseCode;
         }
+
+        /**
+         * Creates a BranchResponse object with a binary body, such as a QR code image, which is
+         * handed on as received through {@link ServerResponse#getBinaryData()}.
+         *
+         * @param responseBytes The body returned by branch server.
+         * @param responseCode  Standard Http Response code (rfc2616 http error codes)
+         */
+        public static BranchResponse forBinaryData(@Nullable byte[] responseBytes, int responseCode) {
+            return new BranchResponse(null, responseBytes, responseCode);
+        }
+    }
+
+    /**
+     * Callback receiving the result of {@link #doRestfulGetAsync(String, BranchResponseCallback)} or
+     * {@link #doRestfulPostAsync(String, JSONObject, BranchResponseCallback)}.
+     */
+    public interface BranchResponseCallback {
+        /**
+         * @param response {@link BranchResponse} with the response data and http status code
+         */
+        void onResponse(BranchResponse response);
+
+        /**
+         * @param exception {@link BranchRemoteException} with the corresponding BranchError code
+         */
+        void onFailure(BranchRemoteException exception);
+    }
+
+    /**
+     * Callback receiving the {@link ServerResponse} of a single attempt, see
+     * {@link #make_restful_post(JSONObject, String, String, String, int, ServerResponseCallback)}.
+     */
+    public interface ServerResponseCallback {
+        void onServerResponse(ServerResponse response);
+    }
+
+    // Turns the result of one async attempt into a ServerResponse, ignoring repeated calls
+    private class AttemptCallback implements BranchResponseCallback {
+        private final String url_;
+        private final String tag_;
+        private final int retryNumber_;
+        private final ServerResponseCallback callback_;
+        private final long reqStartTime_ = System.currentTimeMillis();
+        private final AtomicBoolean isCompleted_ = new AtomicBoolean(false);
+
+        AttemptCallback(String url, String tag, int retryNumber, ServerResponseCallback callback) {
+            url_ = url;
+            tag_ = tag;
+            retryNumber_ = retryNumber;
+            callback_ = callback;
+        }
+
+        @Override
+        public void onResponse(BranchResponse response) {
+            if (complete()) {
+                addRoundTripSample(url_, response, reqStartTime_);
+                callback_.onServerResponse(toServerResponse(response, tag_, retryNumber_));
+            }
+        }
+
+        @Override
+        public void onFailure(BranchRemoteException exception) {
+            if (complete()) {
+                addTimeoutSample(url_, exception);
+                callback_.onServerResponse(toServerResponse(exception, tag_, retryNumber_));
+            }
+        }
+
+        private boolean complete() {
+            if (!isCompleted_.compareAndSet(false, true)) {
+                BranchLogger.w("Ignoring repeated result for " + tag_ + ", retry number " + retryNumber_);
+                return false;
+            }
+            addRoundTripTime(tag_, reqStartTime_);
+            return true;
+        }
     }
 
     /**
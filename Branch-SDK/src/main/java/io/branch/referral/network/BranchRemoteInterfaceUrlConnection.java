@@ -1,30 +1,27 @@
 package io.branch.referral.network;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.TrafficStats;
+import android.net.Uri;
 import android.os.NetworkOnMainThreadException;
-import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import com.google.android.gms.common.util.Strings;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
-import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -38,9 +35,23 @@ import io.branch.referral.PrefHelper;
  * Created by sojanpr on 5/31/17.
  * Class for implementing BranchRemoteInterface using the HttpUrlConnection.
  * This class provides implementation for Branch RESTful operations using HTTP URL Connection.
+ * The state of each call is kept in its own {@link BranchRequestContext}, so one instance can
+ * serve any number of requests at the same time.
  */
 public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
     private static final int THREAD_TAG_POST = 102;
+    private static final int DRAIN_BUFFER_SIZE = 1024;
+    private static final long APP_CONFIG_TTL_MILLIS = 60 * 60 * 1000;
+
+    // Connections are only left open for the platform pool when reuse is enabled
+    private static volatile boolean isConnectionReuseEnabled_ = false;
+    // Shared by every connection while reuse is enabled, the platform pool only reuses connections
+    // made by the same factory
+    private static final CountingSSLSocketFactory socketFactory_ = new CountingSSLSocketFactory();
+    // Requests over connections from socketFactory_, so both counts cover the same connections
+    private static final AtomicLong requestCount_ = new AtomicLong(0);
+    // Smallest JSON body in bytes that is sent gzipped, compression is off by default
+    private static volatile int compressionThreshold_ = BranchRequestBody.COMPRESSION_DISABLED;
 
     private @NonNull
     final Branch branch;
@@ -48,147 +59,202 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
     public BranchRemoteInterfaceUrlConnection(@NonNull Branch branch) {
         this.branch = branch;
         this.prefHelper = PrefHelper.getInstance(branch.getApplicationContext());
-        this.retryLimit = prefHelper.getRetryCount();
+        this.retryPolicy = new BranchRetryPolicy(prefHelper);
     }
 
-    private int lastResponseCode = -1;
-    private String lastResponseMessage = "";
-    private String lastRequestId = "";
     private PrefHelper prefHelper;
-    private int retryLimit;
+    private final BranchRetryPolicy retryPolicy;
 
     @Override
-    public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
-        return doRestfulGet(url, 0);
+    BranchRetryPolicy getRetryPolicy() {
+        return retryPolicy;
     }
 
-    @Override
-    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
-        return doRestfulPost(url, payload, 0);
+    /**
+     * Leaves connections open once their response has been read, so the platform connection pool
+     * can reuse them for the next request instead of doing a new TCP and TLS handshake.
+     */
+    public static void setConnectionReuseEnabled(boolean isEnabled) {
+        isConnectionReuseEnabled_ = isEnabled;
+    }
+
+    /**
+     * @return The number of HTTPS requests sent while connection reuse was enabled, the connection
+     * prewarm included, and how many of them needed a new connection. Nothing is counted otherwise.
+     */
+    public static BranchConnectionStats getConnectionStats() {
+        return new BranchConnectionStats(requestCount_.get(), socketFactory_.getSocketCount());
+    }
+
+    /**
+     * Sends JSON bodies of at least the given size gzipped. A negative size turns compression off.
+     */
+    public static void setRequestCompressionThreshold(int thresholdBytes) {
+        compressionThreshold_ = thresholdBytes < 0 ? BranchRequestBody.COMPRESSION_DISABLED : thresholdBytes;
+    }
+
+    private HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        // Without reuse the platform default factory is kept. Plain HTTP connections are neither
+        // counted as sockets nor as requests.
+        if (isConnectionReuseEnabled_ && connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory_);
+            requestCount_.incrementAndGet();
+        }
+        return connection;
+    }
+
+    /**
+     * Resolves the host of the given Branch API url and opens a connection to it with a HEAD
+     * request, leaving the connection in the platform pool. The first request to the API then
+     * skips the DNS lookup and the TCP and TLS handshakes. Blocks, call it on a background thread.
+     * Failures are only logged, the request that follows simply opens its own connection.
+     */
+    public void prewarmConnection(String baseUrl) {
+        long startTime = System.currentTimeMillis();
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL(baseUrl);
+            InetAddress.getAllByName(url.getHost());
+
+            // Counted as a request like any other, its socket is counted too
+            connection = openConnection(baseUrl);
+            connection.setConnectTimeout(prefHelper.getConnectTimeout());
+            connection.setReadTimeout(prefHelper.getTimeout());
+            connection.setRequestMethod("HEAD");
+            int responseCode = connection.getResponseCode();
+            // The connection only goes back to the pool once its response has been read
+            drainAndClose(responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? connection.getInputStream() : connection.getErrorStream());
+            BranchLogger.v("Prewarmed connection to " + url.getHost() + " in " + (System.currentTimeMillis() - startTime) + "ms");
+        }
+        catch (IOException e) {
+            BranchLogger.d("Could not prewarm connection to " + baseUrl + ": " + e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
     }
 
+    // A connection goes back to the pool only if its response was read to the end
+    private void releaseConnection(HttpURLConnection connection, boolean isResponseRead) {
+        if (!isConnectionReuseEnabled_ || !isResponseRead) {
+            connection.disconnect();
+        }
+    }
 
-    ///-------------- private methods to implement RESTful GET / POST using HttpURLConnection ---------------//
-    private BranchResponse doRestfulGet(String url, int retryNumber) throws BranchRemoteException {
-        HttpsURLConnection connection = null;
+    ///-------------- RESTful GET / POST using HttpURLConnection, one attempt per call ---------------//
+    // Retries are scheduled by BranchRemoteInterface using the retry policy, so no thread is held
+    // while waiting for the next attempt.
+    @Override
+    public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+        HttpURLConnection connection = null;
+        boolean isResponseRead = false;
         PrefHelper prefHelper = PrefHelper.getInstance(branch.getApplicationContext());
+        BranchRequestContext context = new BranchRequestContext(url, getRetryNumber(url));
+        BranchHttpCache httpCache = getHttpCache();
+        String cacheKey = httpCache != null ? getCacheKey(url) : null;
+        BranchHttpCache.Entry cachedEntry = httpCache != null ? httpCache.get(cacheKey) : null;
+        if (cachedEntry != null && cachedEntry.isFresh(System.currentTimeMillis())) {
+            BranchLogger.v("Serving " + url + " from the response cache");
+            return toCachedResponse(cachedEntry);
+        }
         try {
-            int timeout = prefHelper.getTimeout();
+            // Only the read timeout is adapted, connecting takes no server time and the round trip
+            // times of whole requests say little about it
+            int timeout = BranchRttEstimator.getInstance().getTimeoutMillis(url, prefHelper.getTimeout());
             int connectTimeout = prefHelper.getConnectTimeout();
-            String appendKey = url.contains("?") ? "&" : "?";
-            String modifiedUrl = url + appendKey + RETRY_NUMBER + "=" + retryNumber;
-            URL urlObject = new URL(modifiedUrl);
-            connection = (HttpsURLConnection) urlObject.openConnection();
+            connection = openConnection(url);
             connection.setConnectTimeout(connectTimeout);
             connection.setReadTimeout(timeout);
+            if (cachedEntry != null && cachedEntry.getETag() != null) {
+                connection.setRequestProperty(BranchHttpCache.HEADER_IF_NONE_MATCH, cachedEntry.getETag());
+            }
 
             String requestId = connection.getHeaderField(Defines.HeaderKey.RequestId.getKey());
+            context.setRequestId(requestId);
 
             int responseCode = connection.getResponseCode();
-            if (responseCode >= 500 && retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulGet(url, retryNumber);
+            context.setResponseCode(responseCode);
+            String cacheControl = connection.getHeaderField(BranchHttpCache.HEADER_CACHE_CONTROL);
+            BranchResponse result;
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                // A 304 has no body, the cached one is used without being read again
+                httpCache.revalidate(cacheKey, cachedEntry, cacheControl, getCacheTtlMillis(url), System.currentTimeMillis());
+                result = toCachedResponse(cachedEntry);
+                result.requestId = Strings.emptyToNull(requestId);
+                isResponseRead = true;
+                return result;
             }
-            else {
-                BranchResponse result;
-                try {
-                    if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        result = new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
-                    }
-                    else {
-                        result = new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
-                    }
+            try {
+                if (responseCode != HttpURLConnection.HTTP_OK && connection.getErrorStream() != null) {
+                    result = new BranchResponse(getResponseString(connection, connection.getErrorStream()), responseCode);
                 }
-                catch (FileNotFoundException ex) {
-                    // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
-                    result = new BranchResponse(null, responseCode);
+                else {
+                    String responseString = getResponseString(connection, connection.getInputStream());
+                    if (httpCache != null && responseCode == HttpURLConnection.HTTP_OK) {
+                        httpCache.put(cacheKey, responseString, connection.getHeaderField(BranchHttpCache.HEADER_ETAG), cacheControl, getCacheTtlMillis(url), System.currentTimeMillis());
+                    }
+                    result = new BranchResponse(responseString, responseCode);
                 }
-                result.requestId = Strings.emptyToNull(requestId);
-                return result;
             }
+            catch (FileNotFoundException ex) {
+                // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
+                BranchLogger.e(getNetworkErrorMessage(ex, context));
+                // Any error body is read off so the connection can still be reused
+                drainAndClose(connection.getErrorStream());
+                result = new BranchResponse(null, responseCode);
+            }
+            result.requestId = Strings.emptyToNull(requestId);
+            result.retryAfterMillis = getRetryAfterMillis(connection, responseCode);
+            isResponseRead = true;
+            return result;
         }
         catch (SocketException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
         }
         catch (SocketTimeoutException ex) {
-            // On socket  time out retry the request for retryNumber of times
-            if (retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulGet(url, retryNumber);
-            }
-            else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT, ex.getMessage());
-            }
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT, ex.getMessage());
         }
         catch (InterruptedIOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
             // When the thread times out before or while sending the request
-            if (retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulGet(url, retryNumber);
-            }
-            else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_TASK_TIMEOUT, ex.getMessage());
-            }
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_TASK_TIMEOUT, ex.getMessage());
         }
         catch (IOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
         }
         finally {
             if (connection != null) {
-                connection.disconnect();
-                resetStats();
+                releaseConnection(connection, isResponseRead);
             }
         }
     }
 
-
-    private BranchResponse doRestfulPost(String url, JSONObject payload, int retryNumber) throws BranchRemoteException {
-        HttpsURLConnection connection = null;
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
+        HttpURLConnection connection = null;
+        boolean isResponseRead = false;
         PrefHelper prefHelper = PrefHelper.getInstance(branch.getApplicationContext());
-        int timeout = prefHelper.getTimeout();
+        int timeout = BranchRttEstimator.getInstance().getTimeoutMillis(url, prefHelper.getTimeout());
         int connectTimeout = prefHelper.getConnectTimeout();
+        BranchRequestContext context = new BranchRequestContext(url, payload.optInt(RETRY_NUMBER));
 
-        try {
-            payload.put(RETRY_NUMBER, retryNumber);
-        }
-        catch (JSONException e) {
-            BranchLogger.e("Caught JSONException, retry number: " + retryNumber + " " + e.getMessage() + " stacktrace: " + BranchLogger.stackTraceToString(e));
-        }
         try {
             // set the setThreadStatsTag for POST if API 26+
             if (android.os.Build.VERSION.SDK_INT >= 26) {
                 TrafficStats.setThreadStatsTag(THREAD_TAG_POST);
             }
 
-            URL urlObject = new URL(url);
-            connection = (HttpsURLConnection) urlObject.openConnection();
+            connection = openConnection(url);
             connection.setConnectTimeout(connectTimeout);
             connection.setReadTimeout(timeout);
             connection.setDoInput(true);
             connection.setDoOutput(true);
-            if (url.contains(Defines.Jsonkey.QRCodeTag.getKey())) {
+            boolean isQRCodeRequest = url.contains(Defines.Jsonkey.QRCodeTag.getKey());
+            if (isQRCodeRequest) {
                 connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
                 connection.setRequestProperty("Accept", "image/*");
             }
@@ -198,127 +264,72 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
             connection.setRequestMethod("POST");
 
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(connection.getOutputStream());
-
-            outputStreamWriter.write(payload.toString());
-            outputStreamWriter.flush();
-            outputStreamWriter.close();
+            int compressionThreshold = isQRCodeRequest ? BranchRequestBody.COMPRESSION_DISABLED : compressionThreshold_;
+            BranchRequestBody.create(payload, compressionThreshold).writeTo(connection);
 
             String requestId = connection.getHeaderField(Defines.HeaderKey.RequestId.getKey());
-            lastRequestId = requestId;
+            context.setRequestId(requestId);
 
             int responseCode = connection.getResponseCode();
-            lastResponseCode = responseCode;
-            lastResponseMessage = connection.getResponseMessage(); // If we have the response code, this will not invoke any more data transfer
-            BranchLogger.d("lastResponseMessage " + lastResponseMessage);
+            context.setResponseCode(responseCode);
+            context.setResponseMessage(connection.getResponseMessage()); // If we have the response code, this will not invoke any more data transfer
+            BranchLogger.d("Response message " + context.getResponseMessage());
 
-            if (responseCode >= HttpsURLConnection.HTTP_INTERNAL_ERROR && retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+            BranchResponse result;
+            try {
+                if (responseCode != HttpURLConnection.HTTP_OK && connection.getErrorStream() != null) {
+                    BranchLogger.e("Branch Networking Error: " + "\nURL: " + url + "" + "\nResponse Code: " + context.getResponseCode() + "\nResponse Message: " + context.getResponseMessage() + "\nRetry number: " + context.getRetryNumber() +
+                            "\nrequestId: " + context.getRequestId() + "\nElapsed: " + context.getElapsedMillis() + "ms" + "\nObject: " + this);
+                    result = new BranchResponse(getResponseString(connection, connection.getErrorStream()), responseCode);
                 }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            }
-            else {
-                BranchResponse result;
-                try {
-                    if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        BranchLogger.e("Branch Networking Error: " + "\nURL: " + url + "" + "\nResponse Code: " + lastResponseCode + "\nResponse Message: " + lastResponseMessage + "\nRetry number: " + retryNumber + "\nFinal attempt: true" + // no retry on 4XX errors
-                                "\nrequestId: " + lastRequestId + "\nObject: " + this);
-                        result = new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
+                else {
+                    if (isQRCodeRequest) {
+                        // The image is passed on as received, it is only decoded if the app asks for a Bitmap
+                        result = BranchResponse.forBinaryData(getResponseBytes(connection, connection.getInputStream()), responseCode);
                     }
                     else {
-                        if (url.contains(Defines.Jsonkey.QRCodeTag.getKey())) {
-                            // Converting binary data to Base64
-                            InputStream inputStream = connection.getInputStream();
-                            Bitmap bmp = BitmapFactory.decodeStream(inputStream);
-                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                            bmp.compress(Bitmap.CompressFormat.PNG, 100, baos);
-                            byte[] b = baos.toByteArray();
-                            String bmpString = Base64.encodeToString(b, Base64.DEFAULT);
-
-                            result = new BranchResponse(bmpString, responseCode);
-                        }
-                        else {
-                            result = new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
-                        }
-
-                        BranchLogger.v("Branch Networking Success" +
-                                "\nURL: " + url +
-                                "\nResponse Code: " + lastResponseCode +
-                                "\nResponse Message: " + lastResponseMessage +
-                                "\nRetry number: " + retryNumber +
-                                "\nrequestId: " + lastRequestId +
-                                "\nObject: " + this);
+                        result = new BranchResponse(getResponseString(connection, connection.getInputStream()), responseCode);
                     }
-                }
-                catch (FileNotFoundException ex) {
-                    // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
-                    result = new BranchResponse(null, responseCode);
-                }
 
-                result.requestId = requestId;
-                return result;
+                    BranchLogger.v("Branch Networking Success" +
+                            "\nURL: " + url +
+                            "\nResponse Code: " + context.getResponseCode() +
+                            "\nResponse Message: " + context.getResponseMessage() +
+                            "\nRetry number: " + context.getRetryNumber() +
+                            "\nrequestId: " + context.getRequestId() +
+                            "\nElapsed: " + context.getElapsedMillis() + "ms" +
+                            "\nObject: " + this);
+                }
+            }
+            catch (FileNotFoundException ex) {
+                // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
+                BranchLogger.e(getNetworkErrorMessage(ex, context));
+                // Any error body is read off so the connection can still be reused
+                drainAndClose(connection.getErrorStream());
+                result = new BranchResponse(null, responseCode);
             }
 
+            result.requestId = requestId;
+            result.retryAfterMillis = getRetryAfterMillis(connection, responseCode);
+            isResponseRead = true;
+            return result;
         }
         catch (SocketTimeoutException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
-            // On socket  time out retry the request for retryNumber of times
-            if (retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            }
-            else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT, ex.getMessage());
-            }
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_REQ_TIMED_OUT, ex.getMessage());
         }
         catch (InterruptedIOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
             // When the thread times out before or while sending the request
-            if (retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            }
-            else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_TASK_TIMEOUT, ex.getMessage());
-            }
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_TASK_TIMEOUT, ex.getMessage());
         }
         // Unable to resolve host/Unknown host exception
         catch (IOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
-            if (retryNumber < retryLimit) {
-                try {
-                    Thread.sleep(prefHelper.getRetryInterval());
-                }
-                catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
-                }
-                retryNumber++;
-                return doRestfulPost(url, payload, retryNumber);
-            }
-            else {
-                throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
-            }
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
+            throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
         }
         catch (Exception ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            BranchLogger.e(getNetworkErrorMessage(ex, context));
             if (ex instanceof NetworkOnMainThreadException) {
                 BranchLogger.e("Cannot make network request on main thread.");
                 throw new BranchRemoteException((BranchError.ERR_NETWORK_ON_MAIN), ex.getMessage());
@@ -327,47 +338,118 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
         }
         finally {
             if (connection != null) {
-                connection.disconnect();
-                resetStats();
+                releaseConnection(connection, isResponseRead);
             }
         }
     }
 
-    private void resetStats() {
-        lastRequestId = "";
-        lastResponseCode = -1;
-        lastResponseMessage = "";
+    private BranchHttpCache getHttpCache() {
+        return BranchHttpCache.getInstance(new File(branch.getApplicationContext().getCacheDir(), BranchHttpCache.DIRECTORY_NAME));
+    }
+
+    // The retry number changes between attempts of the same request, so it is left out of the key
+    private static String getCacheKey(String url) {
+        Uri uri = Uri.parse(url);
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+        for (String name : uri.getQueryParameterNames()) {
+            if (!RETRY_NUMBER.equals(name)) {
+                for (String value : uri.getQueryParameters(name)) {
+                    builder.appendQueryParameter(name, value);
+                }
+            }
+        }
+        return builder.build().toString();
+    }
+
+    // How long a response is fresh when it has no Cache-Control max-age. Other GET responses are
+    // only kept to be revalidated with their ETag.
+    private static long getCacheTtlMillis(String url) {
+        return url.contains(Defines.RequestPath.GetApp.getPath()) ? APP_CONFIG_TTL_MILLIS : 0;
+    }
+
+    private static BranchResponse toCachedResponse(BranchHttpCache.Entry entry) {
+        // The body is parsed again for every response, callers are free to modify the result
+        BranchResponse result = new BranchResponse(entry.getBody(), HttpURLConnection.HTTP_OK);
+        result.isCached = true;
+        return result;
+    }
+
+    // Only 429 and 503 responses are expected to carry a Retry-After worth honouring
+    private long getRetryAfterMillis(HttpURLConnection connection, int responseCode) {
+        if (responseCode != BranchRetryPolicy.HTTP_TOO_MANY_REQUESTS && responseCode != BranchRetryPolicy.HTTP_SERVICE_UNAVAILABLE) {
+            return -1;
+        }
+        return BranchRetryPolicy.parseRetryAfter(connection.getHeaderField(Defines.HeaderKey.RetryAfter.getKey()), System.currentTimeMillis());
+    }
+
+    private int getRetryNumber(String url) {
+        try {
+            String retryNumber = Uri.parse(url).getQueryParameter(RETRY_NUMBER);
+            return retryNumber == null ? 0 : Integer.parseInt(retryNumber);
+        } catch (Exception e) {
+            return 0;
+        }
     }
 
-    private String getResponseString(InputStream inputStream) {
+    private String getResponseString(HttpURLConnection connection, InputStream inputStream) {
         String responseString = null;
         if (inputStream != null) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(inputStream));
             try {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = rd.readLine()) != null) {
-                    sb.append(line);
-                }
-                rd.close();
-                responseString = sb.toString();
+                responseString = BranchResponseReader.read(inputStream, connection.getContentLength(), connection.getContentEncoding());
             }
             catch (IOException e) {
                 BranchLogger.d(e.getMessage());
             }
+            finally {
+                drainAndClose(inputStream);
+            }
         }
         return responseString;
     }
 
-    String getNetworkErrorMessage(Exception e, String url, int retry){
+    private byte[] getResponseBytes(HttpURLConnection connection, InputStream inputStream) throws IOException {
+        try {
+            return BranchResponseReader.readBytes(inputStream, connection.getContentLength());
+        }
+        finally {
+            drainAndClose(inputStream);
+        }
+    }
+
+    // Reads whatever is left of the body so the connection is clean for the next request
+    private void drainAndClose(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (inputStream.read(buffer) != -1) {
+                // Discard
+            }
+        }
+        catch (IOException e) {
+            BranchLogger.d(e.getMessage());
+        }
+        finally {
+            try {
+                inputStream.close();
+            }
+            catch (IOException e) {
+                BranchLogger.d(e.getMessage());
+            }
+        }
+    }
+
+    String getNetworkErrorMessage(Exception e, BranchRequestContext context) {
         return "Branch Networking Error: " +
-                "\nURL: " + url +
-                "\nResponse Code: " + lastResponseCode +
-                "\nResponse Message: " + lastResponseMessage +
+                "\nURL: " + context.getUrl() +
+                "\nResponse Code: " + context.getResponseCode() +
+                "\nResponse Message: " + context.getResponseMessage() +
                 "\nCaught exception type: " + e.getClass().getCanonicalName() +
-                "\nRetry number: " + retry +
-                "\nrequestId: " + lastRequestId +
-                "\nFinal attempt: " + (retry >= retryLimit) +
+                "\nRetry number: " + context.getRetryNumber() +
+                "\nrequestId: " + context.getRequestId() +
+                "\nElapsed: " + context.getElapsedMillis() + "ms" +
+                "\nFinal attempt: " + (context.getRetryNumber() >= prefHelper.getRetryCount()) +
                 "\nObject: " + this +
                 "\nException Message: " + e.getMessage() +
                 "\nStacktrace: " + BranchLogger.stackTraceToString(e);
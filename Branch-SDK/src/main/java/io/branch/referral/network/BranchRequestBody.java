@@ -0,0 +1,112 @@
+package io.branch.referral.network;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Encoded body of a POST to the Branch API. Bodies at or above the compression threshold are sent
+ * gzipped with a Content-Encoding header, smaller ones are sent as they are since gzip would cost
+ * more time than it saves bytes. A negative threshold turns compression off.
+ * </p>
+ * <p>
+ * The JSON is serialized only once, as UTF-8 bytes, into a buffer that is reused by the next body
+ * created on the same thread. The body is always sent with a fixed length, as some proxies and
+ * older servers do not handle chunked requests. A body must therefore be written on the thread
+ * that created it, before that thread creates another one.
+ * </p>
+ */
+final class BranchRequestBody {
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String GZIP = "gzip";
+    static final int COMPRESSION_DISABLED = -1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+    // Buffers grown past this size by an unusually large body are not kept for the next one
+    static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Buffer> buffers_ = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private final byte[] bytes_;
+    private final int length_;
+    private final boolean isGzipped_;
+
+    private BranchRequestBody(byte[] bytes, int length, boolean isGzipped) {
+        bytes_ = bytes;
+        length_ = length;
+        isGzipped_ = isGzipped;
+    }
+
+    /**
+     * @param payload              The request body.
+     * @param compressionThreshold Smallest body in bytes that is gzipped, negative to never gzip.
+     */
+    static BranchRequestBody create(JSONObject payload, int compressionThreshold) throws IOException, JSONException {
+        Buffer serialized = buffers_.get();
+        serialized.reset();
+        Writer writer = new OutputStreamWriter(serialized, UTF_8);
+        BranchJsonStreamWriter.write(payload, writer);
+        writer.close();
+        if (serialized.capacity() > MAX_REUSED_BUFFER_SIZE) {
+            buffers_.remove();
+        }
+        if (compressionThreshold < 0 || serialized.size() < compressionThreshold) {
+            return new BranchRequestBody(serialized.array(), serialized.size(), false);
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(serialized.size() / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        try {
+            serialized.writeTo(gzip);
+        } finally {
+            gzip.close();
+        }
+        return new BranchRequestBody(compressed.toByteArray(), compressed.size(), true);
+    }
+
+    /**
+     * Sets the encoding and length headers and writes the body. Must be called before the
+     * response is read.
+     */
+    void writeTo(HttpURLConnection connection) throws IOException {
+        if (isGzipped_) {
+            connection.setRequestProperty(CONTENT_ENCODING, GZIP);
+        }
+        connection.setFixedLengthStreamingMode(length_);
+        OutputStream outputStream = connection.getOutputStream();
+        try {
+            outputStream.write(bytes_, 0, length_);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    // Gives access to the written bytes without the copy of toByteArray()
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.branch.referral.network;
+
+/**
+ * <p>
+ * State of a single call to the Branch API: what was sent, what came back and how long it took.
+ * Every call gets its own context, so one {@link BranchRemoteInterfaceUrlConnection} can serve any
+ * number of requests at the same time. A context is only used by the thread making the call.
+ * </p>
+ */
+final class BranchRequestContext {
+    private final String url_;
+    private final int retryNumber_;
+    private final long startTimeMillis_;
+
+    private int responseCode_ = -1;
+    private String responseMessage_ = "";
+    private String requestId_ = "";
+
+    BranchRequestContext(String url, int retryNumber) {
+        url_ = url;
+        retryNumber_ = retryNumber;
+        startTimeMillis_ = System.currentTimeMillis();
+    }
+
+    String getUrl() {
+        return url_;
+    }
+
+    int getRetryNumber() {
+        return retryNumber_;
+    }
+
+    long getElapsedMillis() {
+        return System.currentTimeMillis() - startTimeMillis_;
+    }
+
+    int getResponseCode() {
+        return responseCode_;
+    }
+
+    void setResponseCode(int responseCode) {
+        responseCode_ = responseCode;
+    }
+
+    String getResponseMessage() {
+        return responseMessage_;
+    }
+
+    void setResponseMessage(String responseMessage) {
+        responseMessage_ = responseMessage;
+    }
+
+    String getRequestId() {
+        return requestId_;
+    }
+
+    void setRequestId(String requestId) {
+        requestId_ = requestId;
+    }
+}
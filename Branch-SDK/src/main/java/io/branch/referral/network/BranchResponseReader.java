@@ -0,0 +1,146 @@
+package io.branch.referral.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * Reads a Branch API response body as bytes and decodes it as UTF-8 in one pass. The body is read
+ * into a buffer sized from the Content-Length header when there is one, otherwise into a buffer
+ * from a small pool that is grown as needed. Most responses fit in one pooled buffer, so reading
+ * them allocates nothing but the resulting String. Binary bodies, such as QR code images, are
+ * handed over as the bytes received.
+ * </p>
+ */
+final class BranchResponseReader {
+    static final int POOLED_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String GZIP = "gzip";
+
+    private static final ArrayBlockingQueue<byte[]> bufferPool_ = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    private BranchResponseReader() {
+    }
+
+    /**
+     * Reads the stream to its end, does not close it.
+     *
+     * @param inputStream     The response body.
+     * @param contentLength   Value of the Content-Length header, negative if unknown.
+     * @param contentEncoding Value of the Content-Encoding header, may be null.
+     * @return The body decoded as UTF-8.
+     */
+    static String read(InputStream inputStream, int contentLength, String contentEncoding) throws IOException {
+        Body body;
+        if (GZIP.equalsIgnoreCase(contentEncoding)) {
+            GzipBodyInputStream source = new GzipBodyInputStream(inputStream);
+            try {
+                // The header gives the compressed size, which says little about the decoded size
+                body = readFully(source, -1);
+            } finally {
+                source.end();
+            }
+        } else {
+            body = readFully(inputStream, contentLength);
+        }
+        try {
+            return new String(body.bytes, 0, body.count, UTF_8);
+        } finally {
+            release(body.bytes);
+        }
+    }
+
+    /**
+     * Reads a binary body to its end, does not close the stream. When the Content-Length is known
+     * the body is read straight into the returned array.
+     *
+     * @param inputStream   The response body.
+     * @param contentLength Value of the Content-Length header, negative if unknown.
+     * @return The body as received.
+     */
+    static byte[] readBytes(InputStream inputStream, int contentLength) throws IOException {
+        Body body = readFully(inputStream, contentLength);
+        if (body.count == body.bytes.length && !isPooled(body.bytes)) {
+            return body.bytes;
+        }
+        try {
+            return Arrays.copyOf(body.bytes, body.count);
+        } finally {
+            release(body.bytes);
+        }
+    }
+
+    private static Body readFully(InputStream source, int expectedLength) throws IOException {
+        byte[] buffer = acquire(expectedLength);
+        int count = 0;
+        try {
+            while (true) {
+                if (count == buffer.length) {
+                    // Full, check for the end before growing so an exact Content-Length costs no copy
+                    int next = source.read();
+                    if (next == -1) {
+                        break;
+                    }
+                    byte[] larger = Arrays.copyOf(buffer, buffer.length * 2);
+                    release(buffer);
+                    buffer = larger;
+                    buffer[count++] = (byte) next;
+                }
+                int read = source.read(buffer, count, buffer.length - count);
+                if (read == -1) {
+                    break;
+                }
+                count += read;
+            }
+            return new Body(buffer, count);
+        } catch (IOException e) {
+            release(buffer);
+            throw e;
+        }
+    }
+
+    private static byte[] acquire(int expectedLength) {
+        if (expectedLength > POOLED_BUFFER_SIZE) {
+            return new byte[expectedLength];
+        }
+        byte[] buffer = bufferPool_.poll();
+        return buffer != null ? buffer : new byte[POOLED_BUFFER_SIZE];
+    }
+
+    private static void release(byte[] buffer) {
+        // Buffers sized for one large response are left to the garbage collector
+        if (isPooled(buffer)) {
+            bufferPool_.offer(buffer);
+        }
+    }
+
+    private static boolean isPooled(byte[] buffer) {
+        return buffer.length == POOLED_BUFFER_SIZE;
+    }
+
+    // Frees the native inflater without closing the response stream, which the caller still drains
+    private static final class GzipBodyInputStream extends GZIPInputStream {
+        GzipBodyInputStream(InputStream inputStream) throws IOException {
+            super(inputStream);
+        }
+
+        void end() {
+            inf.end();
+        }
+    }
+
+    private static final class Body {
+        final byte[] bytes;
+        final int count;
+
+        Body(byte[] bytes, int count) {
+            this.bytes = bytes;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.branch.referral.network;
+
+import androidx.annotation.NonNull;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.branch.referral.BranchError;
+import io.branch.referral.PrefHelper;
+
+/**
+ * <p>
+ * Decides whether a failed attempt is retried and how long to wait first. The wait doubles with
+ * every attempt, starting at the retry interval and capped at the max retry interval, and a random
+ * half of it is jittered away so clients failing together do not retry together. A Retry-After
+ * header on a 429 or 503 response replaces the computed wait; when it asks for more than the max
+ * retry interval the attempt is not retried.
+ * </p>
+ */
+class BranchRetryPolicy {
+    static final int HTTP_TOO_MANY_REQUESTS = 429;
+    static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    static final long NO_RETRY = -1;
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private final PrefHelper prefHelper_;
+
+    BranchRetryPolicy(@NonNull PrefHelper prefHelper) {
+        prefHelper_ = prefHelper;
+    }
+
+    /**
+     * @param retryNumber      Number of the attempt that just failed, 0 for the first one.
+     * @param statusCode       HTTP status of the attempt, or the {@link BranchError} code it failed with.
+     * @param retryAfterMillis Wait asked for by the server, negative if it did not ask.
+     * @return Milliseconds to wait before the next attempt, or {@link #NO_RETRY}.
+     */
+    long getRetryDelayMillis(int retryNumber, int statusCode, long retryAfterMillis) {
+        if (retryNumber >= getRetryCount() || !isRetryable(statusCode)) {
+            return NO_RETRY;
+        }
+        long maxDelay = Math.max(getRetryInterval(), getMaxRetryInterval());
+        if (retryAfterMillis >= 0) {
+            return retryAfterMillis <= maxDelay ? retryAfterMillis : NO_RETRY;
+        }
+        long delay = getRetryInterval();
+        for (int i = 0; i < retryNumber && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    // The settings are read for every attempt, so changes apply to requests already queued
+    int getRetryCount() {
+        return prefHelper_.getRetryCount();
+    }
+
+    int getRetryInterval() {
+        return prefHelper_.getRetryInterval();
+    }
+
+    int getMaxRetryInterval() {
+        return prefHelper_.getMaxRetryInterval();
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return statusCode >= 500
+                || statusCode == HTTP_TOO_MANY_REQUESTS
+                || statusCode == BranchError.ERR_BRANCH_REQ_TIMED_OUT
+                || statusCode == BranchError.ERR_BRANCH_TASK_TIMEOUT
+                || statusCode == BranchError.ERR_BRANCH_NO_CONNECTIVITY;
+    }
+
+    /**
+     * Reads a Retry-After header, given either as a number of seconds or as an HTTP date.
+     *
+     * @return The wait in milliseconds, or -1 if the header is missing or malformed.
+     */
+    static long parseRetryAfter(String headerValue, long nowMillis) {
+        String value = headerValue == null ? "" : headerValue.trim();
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            SimpleDateFormat httpDate = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+            Date date = httpDate.parse(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.branch.referral.network;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Keeps a smoothed round trip time and its variance for every Branch API path, the way TCP does
+ * (RFC 6298), and derives timeouts from them. A path that is slow on this network gets timeouts
+ * long enough not to fail for no reason, a fast one stops waiting the full static timeout for a
+ * dead socket. Timeouts stay within configurable bounds, and until a path has been measured, or
+ * while adaptive timeouts are off, the static timeouts are used.
+ * </p>
+ * <p>
+ * Every request that times out doubles the timeout of its path, up to the upper bound, until the
+ * next response brings it back to the measured value.
+ * </p>
+ */
+public final class BranchRttEstimator {
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final int K = 4;
+    // Lower bound for the variance term, so a very steady path still gets some slack
+    private static final double MIN_VARIANCE_TERM = 100;
+    // Doubling more often than this is past any sensible upper bound anyway
+    private static final int MAX_BACKOFF_COUNT = 16;
+
+    private static final BranchRttEstimator instance_ = new BranchRttEstimator();
+
+    private final ConcurrentHashMap<String, Estimate> estimates_ = new ConcurrentHashMap<>();
+    private volatile boolean isEnabled_ = false;
+    private volatile int minTimeout_;
+    private volatile int maxTimeout_;
+
+    BranchRttEstimator() {
+    }
+
+    public static BranchRttEstimator getInstance() {
+        return instance_;
+    }
+
+    /**
+     * Turns adaptive timeouts on, keeping every derived timeout between the given bounds.
+     */
+    public void enable(int minTimeoutMillis, int maxTimeoutMillis) {
+        minTimeout_ = Math.max(1, minTimeoutMillis);
+        maxTimeout_ = Math.max(minTimeout_, maxTimeoutMillis);
+        isEnabled_ = true;
+    }
+
+    /**
+     * Records how long a request to the given url took until its response was received. Attempts
+     * that failed without a response say nothing about the round trip time and are not recorded.
+     */
+    public void addSample(String url, long rttMillis) {
+        if (rttMillis < 0) {
+            return;
+        }
+        String key = keyFor(url);
+        while (true) {
+            Estimate current = estimates_.get(key);
+            if (current == null) {
+                if (estimates_.putIfAbsent(key, new Estimate(rttMillis, rttMillis / 2.0)) == null) {
+                    return;
+                }
+            } else if (estimates_.replace(key, current, current.update(rttMillis))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records that a request to the given url timed out, doubling the timeout of its path for the
+     * next requests. Has no effect until the path has been measured.
+     */
+    public void onTimeout(String url) {
+        String key = keyFor(url);
+        while (true) {
+            Estimate current = estimates_.get(key);
+            if (current == null || estimates_.replace(key, current, current.backOff())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param url            The url a request is about to be sent to.
+     * @param defaultTimeout The static timeout in milliseconds.
+     * @return The timeout derived from the round trip times seen for this url, or the static
+     * timeout if there are none yet or adaptive timeouts are off.
+     */
+    public int getTimeoutMillis(String url, int defaultTimeout) {
+        if (!isEnabled_) {
+            return defaultTimeout;
+        }
+        Estimate estimate = estimates_.get(keyFor(url));
+        if (estimate == null) {
+            return defaultTimeout;
+        }
+        long rto = Math.max(minTimeout_, Math.round(estimate.srtt_ + Math.max(MIN_VARIANCE_TERM, K * estimate.rttvar_)));
+        return (int) Math.min(maxTimeout_, rto << estimate.backoffCount_);
+    }
+
+    // Requests are told apart by path, query parameters such as the retry number are ignored
+    static String keyFor(String url) {
+        try {
+            return new URL(url).getPath();
+        } catch (MalformedURLException e) {
+            int queryStart = url.indexOf('?');
+            return queryStart < 0 ? url : url.substring(0, queryStart);
+        }
+    }
+
+    private static final class Estimate {
+        private final double srtt_;
+        private final double rttvar_;
+        // Timeouts seen since the last sample, each one doubling the timeout
+        private final int backoffCount_;
+
+        Estimate(double srtt, double rttvar) {
+            this(srtt, rttvar, 0);
+        }
+
+        private Estimate(double srtt, double rttvar, int backoffCount) {
+            srtt_ = srtt;
+            rttvar_ = rttvar;
+            backoffCount_ = backoffCount;
+        }
+
+        // RTTVAR is updated first as it uses the previous SRTT. A response ends the backoff.
+        Estimate update(long rtt) {
+            double rttvar = (1 - BETA) * rttvar_ + BETA * Math.abs(srtt_ - rtt);
+            double srtt = (1 - ALPHA) * srtt_ + ALPHA * rtt;
+            return new Estimate(srtt, rttvar);
+        }
+
+        Estimate backOff() {
+            return new Estimate(srtt_, rttvar_, Math.min(MAX_BACKOFF_COUNT, backoffCount_ + 1));
+        }
+    }
+}
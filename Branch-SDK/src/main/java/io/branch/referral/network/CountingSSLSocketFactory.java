@@ -0,0 +1,75 @@
+package io.branch.referral.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * <p>
+ * {@link SSLSocketFactory} counting the TLS sockets opened for Branch API calls. Sockets are only
+ * created for new connections, so comparing the count with the number of requests shows how many
+ * requests reused a pooled connection. Sockets are created by whatever factory is the default at
+ * the time, so custom defaults set by the host still apply.
+ * </p>
+ */
+class CountingSSLSocketFactory extends SSLSocketFactory {
+    private final AtomicLong socketCount_ = new AtomicLong(0);
+
+    long getSocketCount() {
+        return socketCount_.get();
+    }
+
+    private SSLSocketFactory delegate() {
+        return HttpsURLConnection.getDefaultSSLSocketFactory();
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate().getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate().getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket(s, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        socketCount_.incrementAndGet();
+        return delegate().createSocket(address, port, localAddress, localPort);
+    }
+}
@@ -41,6 +41,11 @@ class ServerRequestGetAppConfig extends ServerRequest {
         return true;
     }
 
+    @Override
+    protected REQUEST_PRIORITY getPriority() {
+        return REQUEST_PRIORITY.USER_FACING;
+    }
+
     @Override
     public String getRequestUrl() {
         return prefHelper_.getAPIBaseUrl() + getRequestPath() + "/" + prefHelper_.getBranchKey();
@@ -0,0 +1,164 @@
+package io.branch.referral;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+@RunWith(JUnit4.class)
+public class UrlSkipListMatcherTest {
+    // Default list of UniversalResourceAnalyser
+    private static final List<String> SKIP_LIST = Arrays.asList(
+            "^fb\\d+:((?!campaign_ids).)*$",
+            "^li\\d+:",
+            "^pdk\\d+:",
+            "^twitterkit-.*:",
+            "^com\\.googleusercontent\\.apps\\.\\d+-.*:\\/oauth",
+            "^(?i)(?!(http|https):).*(:|:.*\\b)(password|o?auth|o?auth.?token|access|access.?token)\\b",
+            "^(?i)((http|https):\\/\\/).*[\\/|?|#].*\\b(password|o?auth|o?auth.?token|access|access.?token)\\b"
+    );
+
+    private static final List<String> GOOD_URLS = Arrays.asList(
+            "shshs:/content/path",
+            "shshs:content/path",
+            "https://myapp.app.link/12345/link",
+            "fb123x:/",
+            "https://myapp.app.link?authentic=true&tokemonsta=false",
+            "myscheme://path/brauth=747474",
+            "fb1://?brand=abcde&campaign_ids=a&link=12345"
+    );
+
+    private static final List<String> BAD_URLS = Arrays.asList(
+            "fb123456:login/464646",
+            "twitterkit-.4545:",
+            "shsh:oauth/login",
+            "https://myapp.app.link/oauth_token=fred",
+            "https://myapp.app.link/auth_token=fred",
+            "https://myapp.app.link/auth=fred",
+            "fb1234:/this-is-some-extra-info/?whatever:andstuff",
+            "myscheme://path/:oauth=747474",
+            "HTTPS://google.com/userprofile/devonbanks=OAUTH?"
+    );
+
+    private static final int MANY_URLS = 200;
+
+    @Test
+    public void testMatchesLikeEveryPatternOnItsOwn() {
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(SKIP_LIST, Collections.<String>emptyList());
+        for (String url : concat(GOOD_URLS, BAD_URLS)) {
+            Assert.assertEquals(url, stripOneByOne(SKIP_LIST, Collections.<String>emptyList(), url), matcher.getStrippedURL(url));
+        }
+        for (String url : GOOD_URLS) {
+            Assert.assertEquals(url, matcher.getStrippedURL(url));
+        }
+        for (String url : BAD_URLS) {
+            Assert.assertNotEquals(url, matcher.getStrippedURL(url));
+        }
+    }
+
+    @Test
+    public void testReturnsFirstSkipPatternInListOrder() {
+        // The second pattern is found earlier in the url, the first one in the list still wins
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(Arrays.asList("token", "^myapp"), Collections.<String>emptyList());
+
+        Assert.assertEquals("token", matcher.getStrippedURL("myapp://token"));
+    }
+
+    @Test
+    public void testAcceptList() {
+        List<String> acceptList = Arrays.asList("^https://myapp\\.app\\.link/.*", "^myscheme://.*");
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(SKIP_LIST, acceptList);
+
+        Assert.assertEquals("myscheme://path/brauth=747474", matcher.getStrippedURL("myscheme://path/brauth=747474"));
+        Assert.assertEquals("https://myapp.app.link/12345/link", matcher.getStrippedURL("https://myapp.app.link/12345/link"));
+        Assert.assertNull(matcher.getStrippedURL("shshs:/content/path"));
+        // Cached misses stay misses
+        Assert.assertNull(matcher.getStrippedURL("shshs:/content/path"));
+        // Accept patterns must match the whole url
+        Assert.assertNull(matcher.getStrippedURL("other://myscheme://path"));
+    }
+
+    @Test
+    public void testInvalidPatternsAreIgnored() {
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(Arrays.asList("^li\\d+:", "(unclosed", "^pdk\\d+:"), Arrays.asList("[", "^pdk.*", "^other.*"));
+
+        Assert.assertEquals("^pdk\\d+:", matcher.getStrippedURL("pdk12:/"));
+        Assert.assertEquals("other://path", matcher.getStrippedURL("other://path"));
+        Assert.assertNull(matcher.getStrippedURL("shshs:/content/path"));
+    }
+
+    @Test
+    public void testPatternsWithBackReferencesAreNotCombined() {
+        List<String> patterns = Arrays.asList("^(a)b", "^(x)\\1");
+
+        Assert.assertNull(UrlSkipListMatcher.combine(patterns));
+        Assert.assertEquals("^(x)\\1", new UrlSkipListMatcher(patterns, Collections.<String>emptyList()).getStrippedURL("xx"));
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(SKIP_LIST, Collections.<String>emptyList());
+        for (int i = 0; i < UrlSkipListMatcher.CACHE_SIZE * 4; i++) {
+            String url = "https://myapp.app.link/" + i + (i % 2 == 0 ? "/link" : "/oauth_token=" + i);
+            Assert.assertEquals(url, stripOneByOne(SKIP_LIST, Collections.<String>emptyList(), url), matcher.getStrippedURL(url));
+        }
+    }
+
+    @Test
+    public void testColdAndWarmMatchingAgreeWithPatternsOnTheirOwn() {
+        List<String> acceptList = Arrays.asList("^https://myapp\\.app\\.link/.*", "^myscheme://.*", "^fb\\d+://.*");
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < MANY_URLS; i++) {
+            urls.add(i % 4 == 0 ? "https://myapp.app.link/" + i + "?oauth_token=" + i : "https://myapp.app.link/" + i + "/link?~feature=" + i);
+        }
+        List<String> expected = new ArrayList<>();
+        for (String url : urls) {
+            expected.add(stripOneByOne(SKIP_LIST, acceptList, url));
+        }
+
+        UrlSkipListMatcher matcher = new UrlSkipListMatcher(SKIP_LIST, acceptList);
+        List<String> cold = new ArrayList<>();
+        for (String url : urls) {
+            cold.add(matcher.getStrippedURL(url));
+        }
+        // Only the last CACHE_SIZE urls are still cached
+        List<String> recentUrls = urls.subList(urls.size() - UrlSkipListMatcher.CACHE_SIZE, urls.size());
+        List<String> warm = new ArrayList<>();
+        for (String url : recentUrls) {
+            warm.add(matcher.getStrippedURL(url));
+        }
+
+        Assert.assertEquals(expected, cold);
+        Assert.assertEquals(expected.subList(urls.size() - recentUrls.size(), urls.size()), warm);
+    }
+
+    // What UniversalResourceAnalyser.getStrippedURL did before patterns were precompiled
+    private static String stripOneByOne(List<String> skipList, List<String> acceptList, String url) {
+        for (String skipPattern : skipList) {
+            if (Pattern.compile(skipPattern).matcher(url).find()) {
+                return skipPattern;
+            }
+        }
+        if (acceptList.isEmpty()) {
+            return url;
+        }
+        for (String acceptPattern : acceptList) {
+            if (url.matches(acceptPattern)) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> concat(List<String> a, List<String> b) {
+        List<String> all = new ArrayList<>(a);
+        all.addAll(b);
+        return all;
+    }
+}
@@ -0,0 +1,188 @@
+package io.branch.referral.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.branch.referral.BranchError;
+
+@RunWith(JUnit4.class)
+public class BranchCircuitBreakerTest {
+    private static final String OPEN_URL = "https://api2.branch.io/v1/open";
+    private static final String EVENT_URL = "https://api2.branch.io/v2/event/standard";
+    private static final String OTHER_HOST_URL = "https://api3.branch.io/v1/open";
+    private static final long OPEN_MILLIS = 1000;
+
+    private TestCircuitBreaker breaker;
+    private List<String> transitions;
+
+    @Before
+    public void setUp() {
+        breaker = new TestCircuitBreaker();
+        breaker.setEnabled(true);
+        transitions = new ArrayList<>();
+        breaker.setListener(new BranchCircuitBreaker.Listener() {
+            @Override
+            public void onStateChanged(String host, BranchCircuitBreaker.State previousState, BranchCircuitBreaker.State newState) {
+                transitions.add(host + " " + previousState + "->" + newState);
+            }
+        });
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        breaker.onResult(OPEN_URL, 503);
+        breaker.onResult(OPEN_URL, BranchError.ERR_BRANCH_REQ_TIMED_OUT);
+        Assert.assertTrue(breaker.tryAcquire(EVENT_URL, new Object()));
+
+        breaker.onResult(OPEN_URL, BranchError.ERR_BRANCH_NO_CONNECTIVITY);
+
+        // Every path on the host is held back
+        Assert.assertFalse(breaker.tryAcquire(EVENT_URL, new Object()));
+        Assert.assertEquals(OPEN_MILLIS, breaker.getRemainingOpenMillis(EVENT_URL));
+        Assert.assertEquals(1, transitions.size());
+        Assert.assertEquals("api2.branch.io CLOSED->OPEN", transitions.get(0));
+    }
+
+    @Test
+    public void testResponseResetsFailureCount() {
+        breaker.onResult(OPEN_URL, 500);
+        breaker.onResult(OPEN_URL, 500);
+        breaker.onResult(OPEN_URL, 400);
+        breaker.onResult(OPEN_URL, 500);
+        breaker.onResult(OPEN_URL, 500);
+
+        Assert.assertTrue(breaker.isClosed(OPEN_URL));
+        Assert.assertTrue(transitions.isEmpty());
+    }
+
+    @Test
+    public void testHostsAreSeparate() {
+        openBreaker(OPEN_URL);
+
+        Assert.assertFalse(breaker.tryAcquire(OPEN_URL, new Object()));
+        Assert.assertTrue(breaker.tryAcquire(OTHER_HOST_URL, new Object()));
+    }
+
+    @Test
+    public void testLetsSingleProbeThroughAfterOpenPeriod() {
+        openBreaker(OPEN_URL);
+        breaker.time += OPEN_MILLIS;
+
+        Assert.assertTrue(breaker.tryAcquire(OPEN_URL, new Object()));
+        Assert.assertFalse(breaker.tryAcquire(EVENT_URL, new Object()));
+        Assert.assertEquals(BranchCircuitBreaker.State.HALF_OPEN, breaker.getState(OPEN_URL));
+        Assert.assertEquals(-1, breaker.getRemainingOpenMillis(OPEN_URL));
+    }
+
+    @Test
+    public void testSuccessfulProbeCloses() {
+        openBreaker(OPEN_URL);
+        breaker.time += OPEN_MILLIS;
+        breaker.tryAcquire(OPEN_URL, new Object());
+
+        breaker.onResult(OPEN_URL, 200);
+
+        Assert.assertTrue(breaker.tryAcquire(EVENT_URL, new Object()));
+        Assert.assertEquals("api2.branch.io HALF_OPEN->CLOSED", transitions.get(transitions.size() - 1));
+    }
+
+    @Test
+    public void testFailedProbeDoublesOpenPeriod() {
+        openBreaker(OPEN_URL);
+        breaker.time += OPEN_MILLIS;
+        breaker.tryAcquire(OPEN_URL, new Object());
+
+        breaker.onResult(OPEN_URL, 502);
+
+        Assert.assertEquals(OPEN_MILLIS * 2, breaker.getRemainingOpenMillis(OPEN_URL));
+        Assert.assertEquals("api2.branch.io HALF_OPEN->OPEN", transitions.get(transitions.size() - 1));
+    }
+
+    @Test
+    public void testOpenPeriodIsCapped() {
+        openBreaker(OPEN_URL);
+        for (int i = 0; i < 20; i++) {
+            breaker.time += breaker.getRemainingOpenMillis(OPEN_URL);
+            breaker.tryAcquire(OPEN_URL, new Object());
+            breaker.onResult(OPEN_URL, 500);
+        }
+
+        Assert.assertEquals(BranchCircuitBreaker.MAX_OPEN_MILLIS, breaker.getRemainingOpenMillis(OPEN_URL));
+    }
+
+    @Test
+    public void testReleasedProbeCanBeTakenAgain() {
+        Object probe = new Object();
+        openBreaker(OPEN_URL);
+        breaker.time += OPEN_MILLIS;
+        breaker.tryAcquire(OPEN_URL, probe);
+        Assert.assertTrue(breaker.holdsProbe(OPEN_URL, probe));
+
+        breaker.release(OPEN_URL, probe);
+
+        Assert.assertFalse(breaker.holdsProbe(OPEN_URL, probe));
+        Assert.assertEquals(0, breaker.getRemainingOpenMillis(OPEN_URL));
+        Assert.assertTrue(breaker.tryAcquire(EVENT_URL, new Object()));
+    }
+
+    @Test
+    public void testReleaseWithoutProbeKeepsHalfOpen() {
+        Object probe = new Object();
+        Object other = new Object();
+        openBreaker(OPEN_URL);
+        breaker.time += OPEN_MILLIS;
+        breaker.tryAcquire(OPEN_URL, probe);
+        Assert.assertFalse(breaker.tryAcquire(EVENT_URL, other));
+        Assert.assertFalse(breaker.holdsProbe(EVENT_URL, other));
+
+        breaker.release(EVENT_URL, other);
+
+        // The probe is still in flight, so no second probe is let through
+        Assert.assertEquals(BranchCircuitBreaker.State.HALF_OPEN, breaker.getState(OPEN_URL));
+        Assert.assertFalse(breaker.tryAcquire(EVENT_URL, other));
+        Assert.assertTrue(breaker.holdsProbe(OPEN_URL, probe));
+    }
+
+    @Test
+    public void testInconclusiveResultDoesNotCount() {
+        breaker.onResult(OPEN_URL, BranchError.ERR_BRANCH_TRACKING_DISABLED);
+        breaker.onResult(OPEN_URL, BranchError.ERR_BRANCH_TRACKING_DISABLED);
+        breaker.onResult(OPEN_URL, BranchError.ERR_BRANCH_TRACKING_DISABLED);
+
+        Assert.assertTrue(breaker.isClosed(OPEN_URL));
+    }
+
+    @Test
+    public void testDisabledBreakerNeverOpens() {
+        breaker.setEnabled(false);
+        openBreaker(OPEN_URL);
+
+        Assert.assertTrue(breaker.tryAcquire(OPEN_URL, new Object()));
+        Assert.assertTrue(transitions.isEmpty());
+    }
+
+    private void openBreaker(String url) {
+        for (int i = 0; i < BranchCircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            breaker.onResult(url, 500);
+        }
+    }
+
+    private static class TestCircuitBreaker extends BranchCircuitBreaker {
+        long time = 1000000;
+
+        TestCircuitBreaker() {
+            super(DEFAULT_FAILURE_THRESHOLD, OPEN_MILLIS);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+}
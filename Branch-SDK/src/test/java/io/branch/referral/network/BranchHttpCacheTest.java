@@ -0,0 +1,114 @@
+package io.branch.referral.network;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@RunWith(JUnit4.class)
+public class BranchHttpCacheTest {
+    private static final String KEY = "https://api2.branch.io/v1/app-link-settings/key_live_123?sdk=android5.9.0";
+    private static final String BODY = "{\"short_url_domain\":\"example.app.link\",\"always_open_app\":true}";
+    private static final String ETAG = "\"33a64df5\"";
+    private static final long NOW = 1700000000000L;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("branch_http_cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testFreshnessFromCacheControl() {
+        Assert.assertEquals(NOW + 300 * 1000, BranchHttpCache.getExpiresAt("public, max-age=300", HOUR, NOW));
+        Assert.assertEquals(NOW, BranchHttpCache.getExpiresAt("no-cache", HOUR, NOW));
+        Assert.assertEquals(-1, BranchHttpCache.getExpiresAt("private, no-store", HOUR, NOW));
+    }
+
+    @Test
+    public void testFreshnessFallsBackToTtl() {
+        Assert.assertEquals(NOW + HOUR, BranchHttpCache.getExpiresAt(null, HOUR, NOW));
+        Assert.assertEquals(NOW + HOUR, BranchHttpCache.getExpiresAt("max-age=soon", HOUR, NOW));
+        Assert.assertEquals(NOW, BranchHttpCache.getExpiresAt(null, 0, NOW));
+    }
+
+    @Test
+    public void testEntrySurvivesRestart() {
+        new BranchHttpCache(directory).put(KEY, BODY, ETAG, "max-age=60", 0, NOW);
+
+        BranchHttpCache.Entry entry = new BranchHttpCache(directory).get(KEY);
+
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(BODY, entry.getBody());
+        Assert.assertEquals(ETAG, entry.getETag());
+        Assert.assertTrue(entry.isFresh(NOW + 59 * 1000));
+        Assert.assertFalse(entry.isFresh(NOW + 60 * 1000));
+    }
+
+    @Test
+    public void testStaleEntryIsKeptForRevalidation() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        cache.put(KEY, BODY, ETAG, null, 0, NOW);
+
+        BranchHttpCache.Entry entry = cache.get(KEY);
+
+        Assert.assertFalse(entry.isFresh(NOW));
+        Assert.assertEquals(ETAG, entry.getETag());
+    }
+
+    @Test
+    public void testUnusableResponsesAreNotStored() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        cache.put(KEY, BODY, null, null, 0, NOW);
+        Assert.assertNull(cache.get(KEY));
+
+        cache.put(KEY, BODY, ETAG, "max-age=60", 0, NOW);
+        cache.put(KEY, BODY, ETAG, "no-store", HOUR, NOW);
+        Assert.assertNull(cache.get(KEY));
+        Assert.assertNull(new BranchHttpCache(directory).get(KEY));
+    }
+
+    @Test
+    public void testRevalidationKeepsBody() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        cache.put(KEY, BODY, ETAG, null, 0, NOW);
+        BranchHttpCache.Entry entry = cache.get(KEY);
+
+        BranchHttpCache.Entry refreshed = cache.revalidate(KEY, entry, "max-age=60", 0, NOW + HOUR);
+
+        Assert.assertTrue(refreshed.isFresh(NOW + HOUR));
+        Assert.assertEquals(BODY, refreshed.getBody());
+        Assert.assertEquals(ETAG, refreshed.getETag());
+        Assert.assertSame(refreshed, cache.get(KEY));
+        Assert.assertTrue(new BranchHttpCache(directory).get(KEY).isFresh(NOW + HOUR));
+    }
+
+    @Test
+    public void testKeepsMostRecentEntries() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        for (int i = 0; i < BranchHttpCache.MAX_ENTRIES + 8; i++) {
+            cache.put(KEY + "&i=" + i, BODY, ETAG, null, HOUR, NOW);
+        }
+
+        Assert.assertEquals(BranchHttpCache.MAX_ENTRIES, directory.listFiles().length);
+    }
+}
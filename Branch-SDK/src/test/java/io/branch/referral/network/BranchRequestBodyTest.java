@@ -0,0 +1,212 @@
+package io.branch.referral.network;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+@RunWith(JUnit4.class)
+public class BranchRequestBodyTest {
+    private static final int THRESHOLD = 1024;
+
+    private HttpServer server;
+    private volatile String receivedEncoding;
+    private volatile String receivedTransferEncoding;
+    private volatile int receivedLength;
+    private volatile String receivedBody;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/event/standard", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedEncoding = exchange.getRequestHeaders().getFirst(BranchRequestBody.CONTENT_ENCODING);
+                receivedTransferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                byte[] raw = readAll(exchange.getRequestBody());
+                receivedLength = raw.length;
+                InputStream body = new ByteArrayInputStream(raw);
+                if (BranchRequestBody.GZIP.equals(receivedEncoding)) {
+                    body = new GZIPInputStream(body);
+                }
+                receivedBody = new String(readAll(body), "UTF-8");
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testLargeBodyIsSentGzipped() throws Exception {
+        JSONObject body = largeEventBody();
+        post(BranchRequestBody.create(body, THRESHOLD));
+
+        Assert.assertEquals(BranchRequestBody.GZIP, receivedEncoding);
+        JSONAssert.assertEquals(body, new JSONObject(receivedBody), true);
+        Assert.assertTrue(receivedLength < receivedBody.length());
+    }
+
+    @Test
+    public void testSmallBodyIsSentAsIs() throws Exception {
+        JSONObject body = new JSONObject().put("name", "PURCHASE");
+        post(BranchRequestBody.create(body, THRESHOLD));
+
+        Assert.assertNull(receivedEncoding);
+        Assert.assertNull(receivedTransferEncoding);
+        Assert.assertEquals("{\"name\":\"PURCHASE\"}", receivedBody);
+        Assert.assertEquals(receivedBody.length(), receivedLength);
+    }
+
+    @Test
+    public void testCompressionDisabledSendsFixedLengthBody() throws Exception {
+        JSONObject body = largeEventBody();
+        post(BranchRequestBody.create(body, BranchRequestBody.COMPRESSION_DISABLED));
+
+        Assert.assertNull(receivedEncoding);
+        Assert.assertNull(receivedTransferEncoding);
+        JSONAssert.assertEquals(body, new JSONObject(receivedBody), true);
+        Assert.assertEquals(receivedBody.getBytes("UTF-8").length, receivedLength);
+    }
+
+    @Test
+    public void testReusedBufferOnlySendsCurrentBody() throws Exception {
+        post(BranchRequestBody.create(largeEventBody(), BranchRequestBody.COMPRESSION_DISABLED));
+        // Serialized into the buffer the larger body left behind
+        post(BranchRequestBody.create(new JSONObject().put("name", "PURCHASE"), BranchRequestBody.COMPRESSION_DISABLED));
+
+        Assert.assertEquals("{\"name\":\"PURCHASE\"}", receivedBody);
+        Assert.assertEquals(receivedBody.length(), receivedLength);
+    }
+
+    @Test
+    public void testBodyLargerThanReusedBufferLimit() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < BranchRequestBody.MAX_REUSED_BUFFER_SIZE) {
+            builder.append("content ");
+        }
+        JSONObject body = new JSONObject().put("name", builder.toString());
+        post(BranchRequestBody.create(body, BranchRequestBody.COMPRESSION_DISABLED));
+        JSONAssert.assertEquals(body, new JSONObject(receivedBody), true);
+
+        post(BranchRequestBody.create(new JSONObject().put("name", "PURCHASE"), BranchRequestBody.COMPRESSION_DISABLED));
+        Assert.assertEquals("{\"name\":\"PURCHASE\"}", receivedBody);
+    }
+
+    @Test
+    public void testNonAsciiBodyRoundTrips() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < THRESHOLD) {
+            builder.append("caf\u00e9 \u65e5\u672c ");
+        }
+        JSONObject body = new JSONObject().put("name", builder.toString());
+        post(BranchRequestBody.create(body, THRESHOLD));
+
+        Assert.assertEquals(BranchRequestBody.GZIP, receivedEncoding);
+        JSONAssert.assertEquals(body, new JSONObject(receivedBody), true);
+    }
+
+    @Test
+    public void testStringsAreEscaped() throws Exception {
+        JSONObject body = new JSONObject()
+                .put("quote", "say \"hi\"")
+                .put("path", "C:\\branch")
+                .put("lines", "a\nb\tc\u0001")
+                .put("url", "https://branch.io/a</b")
+                .put("separator", "x\u2028y");
+        String serialized = serialize(body);
+
+        Assert.assertTrue(serialized.contains("\"say \\\"hi\\\"\""));
+        Assert.assertTrue(serialized.contains("\"C:\\\\branch\""));
+        Assert.assertTrue(serialized.contains("\"a\\nb\\tc\\u0001\""));
+        // Every slash is escaped, as the Android JSONStringer does
+        Assert.assertTrue(serialized.contains("\"https:\\/\\/branch.io\\/a<\\/b\""));
+        Assert.assertTrue(serialized.contains("\"x\u2028y\""));
+        JSONAssert.assertEquals(body, new JSONObject(serialized), true);
+    }
+
+    @Test
+    public void testValuesMatchJSONObjectToString() throws Exception {
+        JSONObject body = new JSONObject()
+                .put("int", 42)
+                .put("long", 1700000000000L)
+                .put("double", 12.5)
+                .put("bool", true)
+                .put("null", JSONObject.NULL)
+                .put("array", new JSONArray().put(1).put("two").put(new JSONObject().put("three", 3)))
+                .put("empty", new JSONObject());
+
+        JSONAssert.assertEquals(body.toString(), serialize(body), true);
+    }
+
+    private void post(BranchRequestBody body) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/v2/event/standard");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            body.writeTo(connection);
+            Assert.assertEquals(200, connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String serialize(JSONObject body) throws Exception {
+        StringWriter writer = new StringWriter();
+        BranchJsonStreamWriter.write(body, writer);
+        return writer.toString();
+    }
+
+    // Shaped like a v2 event with content items, which is where compression pays off
+    private static JSONObject largeEventBody() throws Exception {
+        JSONArray contentItems = new JSONArray();
+        for (int i = 0; i < 20; i++) {
+            contentItems.put(new JSONObject()
+                    .put("$canonical_identifier", "content/" + i)
+                    .put("$og_title", "Content title")
+                    .put("$content_schema", "COMMERCE_PRODUCT")
+                    .put("$price", 12.5));
+        }
+        return new JSONObject()
+                .put("name", "PURCHASE")
+                .put("content_items", contentItems)
+                .put("user_data", new JSONObject().put("os", "Android").put("environment", "FULL_APP"));
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        inputStream.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,159 @@
+package io.branch.referral.network;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RunWith(JUnit4.class)
+public class BranchResponseReaderTest {
+    private static final String OPEN_RESPONSE = "{\"session_id\":\"123\",\"data\":\"{\\\"+clicked_branch_link\\\":false}\"}";
+
+    @Test
+    public void testReadsBodyOfKnownLength() throws IOException {
+        byte[] body = OPEN_RESPONSE.getBytes("UTF-8");
+
+        Assert.assertEquals(OPEN_RESPONSE, BranchResponseReader.read(new ByteArrayInputStream(body), body.length, null));
+    }
+
+    @Test
+    public void testReadsBodyOfUnknownLength() throws IOException {
+        byte[] body = OPEN_RESPONSE.getBytes("UTF-8");
+
+        Assert.assertEquals(OPEN_RESPONSE, BranchResponseReader.read(new ByteArrayInputStream(body), -1, null));
+    }
+
+    @Test
+    public void testReadsBodyLargerThanPooledBuffer() throws IOException {
+        String largeBody = largeBody();
+        byte[] body = largeBody.getBytes("UTF-8");
+
+        Assert.assertEquals(largeBody, BranchResponseReader.read(new TrickleInputStream(body), -1, null));
+        Assert.assertEquals(largeBody, BranchResponseReader.read(new ByteArrayInputStream(body), body.length, null));
+    }
+
+    @Test
+    public void testKeepsNewLinesAndMultiByteCharacters() throws IOException {
+        // Characters are split across reads, which breaks decoding a chunk at a time
+        String text = "{\"title\":\"caf\u00e9\",\n\"tags\":[\"\u65e5\u672c\",\"\ud83d\ude00\"]}";
+        byte[] body = text.getBytes("UTF-8");
+
+        Assert.assertEquals(text, BranchResponseReader.read(new TrickleInputStream(body), body.length, null));
+    }
+
+    @Test
+    public void testReadsGzippedBody() throws IOException {
+        String largeBody = largeBody();
+        byte[] compressed = gzip(largeBody.getBytes("UTF-8"));
+
+        // Content-Length is the compressed size, it must not cut the decoded body short
+        Assert.assertEquals(largeBody, BranchResponseReader.read(new ByteArrayInputStream(compressed), compressed.length, "gzip"));
+    }
+
+    @Test
+    public void testGzippedBodyLeavesResponseStreamOpen() throws IOException {
+        byte[] compressed = gzip(OPEN_RESPONSE.getBytes("UTF-8"));
+        CloseTrackingInputStream response = new CloseTrackingInputStream(compressed);
+
+        Assert.assertEquals(OPEN_RESPONSE, BranchResponseReader.read(response, compressed.length, "gzip"));
+        // The caller drains and closes it, so the connection can go back to the pool
+        Assert.assertFalse(response.isClosed);
+    }
+
+    @Test
+    public void testReadsEmptyBody() throws IOException {
+        Assert.assertEquals("", BranchResponseReader.read(new ByteArrayInputStream(new byte[0]), 0, null));
+    }
+
+    @Test
+    public void testReadsBinaryBodyOfKnownLength() throws IOException {
+        byte[] image = binaryBody(BranchResponseReader.POOLED_BUFFER_SIZE * 2 + 7);
+
+        Assert.assertArrayEquals(image, BranchResponseReader.readBytes(new TrickleInputStream(image), image.length));
+    }
+
+    @Test
+    public void testReadsBinaryBodyOfUnknownLength() throws IOException {
+        byte[] small = binaryBody(100);
+        byte[] large = binaryBody(BranchResponseReader.POOLED_BUFFER_SIZE * 2 + 7);
+
+        Assert.assertArrayEquals(small, BranchResponseReader.readBytes(new ByteArrayInputStream(small), -1));
+        Assert.assertArrayEquals(large, BranchResponseReader.readBytes(new ByteArrayInputStream(large), -1));
+    }
+
+    @Test
+    public void testBinaryBodyIsNotSharedWithPool() throws IOException {
+        byte[] image = binaryBody(BranchResponseReader.POOLED_BUFFER_SIZE);
+        byte[] first = BranchResponseReader.readBytes(new ByteArrayInputStream(image), image.length);
+        BranchResponseReader.read(new ByteArrayInputStream(largeBody().getBytes("UTF-8")), -1, null);
+
+        Assert.assertArrayEquals(image, first);
+    }
+
+    // Every byte value, including ones that are not valid UTF-8
+    private static byte[] binaryBody(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static String largeBody() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; builder.length() < BranchResponseReader.POOLED_BUFFER_SIZE * 3; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"$canonical_identifier\":\"content/").append(i).append("\"}");
+        }
+        return builder.append(']').toString();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(bytes);
+        gzip.close();
+        return compressed.toByteArray();
+    }
+
+    private static class CloseTrackingInputStream extends ByteArrayInputStream {
+        boolean isClosed;
+
+        CloseTrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            isClosed = true;
+            super.close();
+        }
+    }
+
+    // Hands out a few bytes per read, the way a slow socket does
+    private static class TrickleInputStream extends InputStream {
+        private final ByteArrayInputStream delegate;
+
+        TrickleInputStream(byte[] bytes) {
+            delegate = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() {
+            return delegate.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            return delegate.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+}
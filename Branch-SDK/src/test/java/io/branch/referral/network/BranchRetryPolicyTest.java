@@ -0,0 +1,157 @@
+package io.branch.referral.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import io.branch.referral.BranchError;
+
+@RunWith(JUnit4.class)
+public class BranchRetryPolicyTest {
+    private static final int RETRY_COUNT = 10;
+    private static final int RETRY_INTERVAL = 1000;
+    private static final int MAX_RETRY_INTERVAL = 8000;
+    // Enough samples for the jitter to reach close to both ends of its range
+    private static final int SAMPLES = 2000;
+    // Wed, 21 Oct 2015 07:28:00 GMT
+    private static final long HTTP_DATE_MILLIS = 1445412480000L;
+    private static final String HTTP_DATE = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    private TestRetryPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new TestRetryPolicy();
+    }
+
+    @Test
+    public void testDelayDoublesWithEveryAttempt() {
+        assertDelayBetween(0, 500, 1000);
+        assertDelayBetween(1, 1000, 2000);
+        assertDelayBetween(2, 2000, 4000);
+        assertDelayBetween(3, 4000, 8000);
+    }
+
+    @Test
+    public void testDelayIsCapped() {
+        assertDelayBetween(4, 4000, 8000);
+        assertDelayBetween(RETRY_COUNT - 1, 4000, 8000);
+    }
+
+    @Test
+    public void testMaxBelowIntervalUsesInterval() {
+        policy.maxRetryInterval = RETRY_INTERVAL / 2;
+
+        assertDelayBetween(3, 500, 1000);
+    }
+
+    @Test
+    public void testJitterSpreadsOverHalfTheDelay() {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long delay = policy.getRetryDelayMillis(3, 503, -1);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+
+        // Not every retry waits the same, and the spread covers most of the range
+        Assert.assertTrue(min < 4400);
+        Assert.assertTrue(max > 7600);
+    }
+
+    @Test
+    public void testStopsAfterRetryCount() {
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(RETRY_COUNT, 503, -1));
+
+        policy.retryCount = 0;
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, 503, -1));
+    }
+
+    @Test
+    public void testRetryableStatuses() {
+        Assert.assertTrue(policy.getRetryDelayMillis(0, 500, -1) >= 0);
+        Assert.assertTrue(policy.getRetryDelayMillis(0, 503, -1) >= 0);
+        Assert.assertTrue(policy.getRetryDelayMillis(0, BranchRetryPolicy.HTTP_TOO_MANY_REQUESTS, -1) >= 0);
+        Assert.assertTrue(policy.getRetryDelayMillis(0, BranchError.ERR_BRANCH_REQ_TIMED_OUT, -1) >= 0);
+        Assert.assertTrue(policy.getRetryDelayMillis(0, BranchError.ERR_BRANCH_TASK_TIMEOUT, -1) >= 0);
+        Assert.assertTrue(policy.getRetryDelayMillis(0, BranchError.ERR_BRANCH_NO_CONNECTIVITY, -1) >= 0);
+    }
+
+    @Test
+    public void testNonRetryableStatuses() {
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, 400, -1));
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, 404, -1));
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, 409, -1));
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, BranchError.ERR_BRANCH_TRACKING_DISABLED, -1));
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, BranchError.ERR_BRANCH_KEY_INVALID, -1));
+    }
+
+    @Test
+    public void testRetryAfterReplacesDelay() {
+        Assert.assertEquals(3000, policy.getRetryDelayMillis(0, 503, 3000));
+        Assert.assertEquals(0, policy.getRetryDelayMillis(2, 429, 0));
+        Assert.assertEquals(MAX_RETRY_INTERVAL, policy.getRetryDelayMillis(0, 503, MAX_RETRY_INTERVAL));
+    }
+
+    @Test
+    public void testRetryAfterBeyondMaxIsNotRetried() {
+        Assert.assertEquals(BranchRetryPolicy.NO_RETRY, policy.getRetryDelayMillis(0, 503, MAX_RETRY_INTERVAL + 1));
+    }
+
+    @Test
+    public void testParsesRetryAfterSeconds() {
+        Assert.assertEquals(120000, BranchRetryPolicy.parseRetryAfter("120", 0));
+        Assert.assertEquals(5000, BranchRetryPolicy.parseRetryAfter(" 5 ", 0));
+        Assert.assertEquals(0, BranchRetryPolicy.parseRetryAfter("0", 0));
+        Assert.assertEquals(0, BranchRetryPolicy.parseRetryAfter("-5", 0));
+    }
+
+    @Test
+    public void testParsesRetryAfterHttpDate() {
+        Assert.assertEquals(30000, BranchRetryPolicy.parseRetryAfter(HTTP_DATE, HTTP_DATE_MILLIS - 30000));
+        // A date in the past means retry right away
+        Assert.assertEquals(0, BranchRetryPolicy.parseRetryAfter(HTTP_DATE, HTTP_DATE_MILLIS + 30000));
+    }
+
+    @Test
+    public void testMalformedRetryAfterIsIgnored() {
+        Assert.assertEquals(-1, BranchRetryPolicy.parseRetryAfter(null, 0));
+        Assert.assertEquals(-1, BranchRetryPolicy.parseRetryAfter("", 0));
+        Assert.assertEquals(-1, BranchRetryPolicy.parseRetryAfter("soon", 0));
+        Assert.assertEquals(-1, BranchRetryPolicy.parseRetryAfter("21 Oct 2015", 0));
+    }
+
+    private void assertDelayBetween(int retryNumber, long min, long max) {
+        for (int i = 0; i < SAMPLES; i++) {
+            long delay = policy.getRetryDelayMillis(retryNumber, 503, -1);
+            Assert.assertTrue("retry " + retryNumber + " waited " + delay, delay >= min && delay <= max);
+        }
+    }
+
+    private static class TestRetryPolicy extends BranchRetryPolicy {
+        int retryCount = RETRY_COUNT;
+        int maxRetryInterval = MAX_RETRY_INTERVAL;
+
+        TestRetryPolicy() {
+            super(null);
+        }
+
+        @Override
+        int getRetryCount() {
+            return retryCount;
+        }
+
+        @Override
+        int getRetryInterval() {
+            return RETRY_INTERVAL;
+        }
+
+        @Override
+        int getMaxRetryInterval() {
+            return maxRetryInterval;
+        }
+    }
+}
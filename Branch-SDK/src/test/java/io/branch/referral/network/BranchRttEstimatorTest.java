@@ -0,0 +1,152 @@
+package io.branch.referral.network;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class BranchRttEstimatorTest {
+    private static final String OPEN_URL = "https://api2.branch.io/v1/open";
+    private static final String EVENT_URL = "https://api2.branch.io/v2/event/standard";
+    private static final int STATIC_TIMEOUT = 5500;
+
+    private BranchRttEstimator estimator;
+
+    @Before
+    public void setUp() {
+        estimator = new BranchRttEstimator();
+        estimator.enable(100, 10000);
+    }
+
+    @Test
+    public void testUsesStaticTimeoutUntilMeasured() {
+        estimator.addSample(OPEN_URL, 200);
+
+        Assert.assertEquals(STATIC_TIMEOUT, estimator.getTimeoutMillis(EVENT_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testUsesStaticTimeoutWhenDisabled() {
+        BranchRttEstimator disabled = new BranchRttEstimator();
+        disabled.addSample(OPEN_URL, 200);
+
+        Assert.assertEquals(STATIC_TIMEOUT, disabled.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testFirstSample() {
+        // SRTT = R, RTTVAR = R / 2, timeout = SRTT + 4 * RTTVAR
+        estimator.addSample(OPEN_URL, 200);
+
+        Assert.assertEquals(600, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testSmoothsLaterSamples() {
+        estimator.addSample(OPEN_URL, 200);
+        estimator.addSample(OPEN_URL, 400);
+
+        // RTTVAR = 3/4 * 100 + 1/4 * 200 = 125, SRTT = 7/8 * 200 + 1/8 * 400 = 225
+        Assert.assertEquals(725, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testSteadyPathConvergesToRoundTripTime() {
+        for (int i = 0; i < 100; i++) {
+            estimator.addSample(OPEN_URL, 300);
+        }
+
+        // The variance term never drops below 100ms
+        Assert.assertEquals(400, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testTimeoutStaysWithinBounds() {
+        estimator.enable(1000, 3000);
+        estimator.addSample(OPEN_URL, 50);
+        estimator.addSample(EVENT_URL, 2000);
+
+        Assert.assertEquals(1000, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+        Assert.assertEquals(3000, estimator.getTimeoutMillis(EVENT_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testTimeoutsDoubleTheTimeout() {
+        estimator.addSample(OPEN_URL, 200);
+        estimator.onTimeout(OPEN_URL);
+        Assert.assertEquals(1200, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+
+        estimator.onTimeout(OPEN_URL + "?retryNumber=1");
+        Assert.assertEquals(2400, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testBackoffStaysWithinUpperBound() {
+        estimator.addSample(OPEN_URL, 200);
+        for (int i = 0; i < 100; i++) {
+            estimator.onTimeout(OPEN_URL);
+        }
+
+        Assert.assertEquals(10000, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testResponseEndsBackoff() {
+        estimator.addSample(OPEN_URL, 200);
+        estimator.onTimeout(OPEN_URL);
+        estimator.onTimeout(OPEN_URL);
+        estimator.addSample(OPEN_URL, 400);
+
+        Assert.assertEquals(725, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testTimeoutBeforeFirstSampleKeepsStaticTimeout() {
+        estimator.onTimeout(OPEN_URL);
+
+        Assert.assertEquals(STATIC_TIMEOUT, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testPathsAreMeasuredSeparately() {
+        estimator.addSample(OPEN_URL, 100);
+        estimator.addSample(EVENT_URL, 1000);
+
+        Assert.assertEquals(300, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+        Assert.assertEquals(3000, estimator.getTimeoutMillis(EVENT_URL, STATIC_TIMEOUT));
+    }
+
+    @Test
+    public void testIgnoresQueryParameters() {
+        estimator.addSample(OPEN_URL + "?retryNumber=1&branch_key=key_live_123", 100);
+
+        Assert.assertEquals(300, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+        Assert.assertEquals("/v1/open", BranchRttEstimator.keyFor(OPEN_URL + "?retryNumber=1"));
+        Assert.assertEquals("v1/open", BranchRttEstimator.keyFor("v1/open?retryNumber=1"));
+    }
+
+    @Test
+    public void testConcurrentSamples() throws InterruptedException {
+        final int threadCount = 8;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        estimator.addSample(OPEN_URL, 200);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(300, estimator.getTimeoutMillis(OPEN_URL, STATIC_TIMEOUT));
+    }
+}